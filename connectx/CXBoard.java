@@ -19,8 +19,7 @@
 package connectx;
 
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.TreeSet;
+import java.util.SplittableRandom;
 //import java.util.stream.Collectors;
 
 /**
@@ -29,6 +28,19 @@ import java.util.TreeSet;
  * The CXBoard class allows only alternates moves between two players. It
  * mantains the ordered list of moves and allows undoes.
  * </p>
+ * <p>
+ * Cells are stored in one bitboard per player. Column <code>j</code> takes the
+ * bits <code>j*(M+1) .. j*(M+1)+M-1</code> (bottom row first) plus one sentinel
+ * bit that is never set, so that alignments can be detected with shifts and ANDs.
+ * Boards of up to 64 bits use a single <code>long</code> word per player, larger
+ * boards an array of words.
+ * </p>
+ * <p>
+ * On larger boards wins are detected by counting the runs through the last
+ * move, and <code>reset</code>, <code>copyInto</code>, <code>getBoard</code> and
+ * <code>fillCells</code> go through the move history, so that their cost grows
+ * with the stones played rather than with the board area.
+ * </p>
  */
 
 public class CXBoard {
@@ -47,16 +59,35 @@ public class CXBoard {
 	 */
 	public final int X;
 
-	// grid for the board
-	protected CXCellState[][] B;
+	// bitboard geometry: bits per column (M rows + 1 sentinel) and 64-bit words per player
+	protected final int H1;
+	protected final int W;
+
+	// bitboards for the board: BB[p] holds the cells marked by player p
+	protected long[][] BB;
+	private   long[]   SR;  // scratch runs for threatCells, allocated on first use
 
-	protected LinkedList<CXCell> MC;   // Marked Cells stack (used to undo)
+	protected int                MC[]; // Marked Cells stack, (row << 16 | col) per move (used to undo)
+	protected int                MCn;  // Number of marked cells
 	protected int                RP[]; // First free row position
-	protected TreeSet<Integer>   AC;   // Availabe (not full) columns
+	protected long               AC[]; // Availabe (not full) columns, bit j%64 of word j/64 for column j
+	protected int                ACn;  // Number of available columns
 	
 	// we define characters for players (PR for Red, PY for Yellow)
 	private final CXCellState[] Player = {CXCellState.P1, CXCellState.P2};
 
+	// cell states by ordinal, see cell(i, j)
+	private static final CXCellState[] CELL = CXCellState.values();
+
+	// CXCell objects handed out by getLastMove/getMarkedCells, one per (player, cell),
+	// created on demand so that markColumn never allocates
+	private CXCell[] FC;
+
+	// Zobrist keys, Z[p*M*N + i*N + j] for cell i,j marked by player p
+	protected final long[] Z;
+	protected long ZH; // Zobrist key of the position
+	protected long ZR; // Zobrist key of the left-right mirrored position
+
 	protected int currentPlayer; // currentPlayer plays next move
 
 	protected CXGameState gameState; // game state
@@ -83,39 +114,64 @@ public class CXBoard {
 		this.N = N;
 		this.X = X;
 
-		B  = new CXCellState[M][N];
-		MC = new LinkedList<CXCell>();
+		H1 = M+1;
+		W  = (N*H1 + 63) >>> 6;
+
+		BB = new long[2][W];
+		Z  = zobristKeys(M, N, X);
+		MC = new int[M*N];
 		RP = new int[N];
-		AC = new TreeSet<Integer>();
+		AC = new long[(N + 63) >>> 6];
 		reset();
 
 	}
 
+	// Creates a board with the same parameters and the same state of C
+	private CXBoard(CXBoard C) {
+		this.M = C.M;
+		this.N = C.N;
+		this.X = C.X;
+
+		H1 = C.H1;
+		W  = C.W;
+
+		BB = new long[2][W];
+		Z  = C.Z;  // keys never change, they can be shared
+		FC = C.FC; // same for the (immutable) flyweight cells
+		MC = new int[M*N];
+		RP = new int[N];
+		AC = new long[C.AC.length];
+		C.copyInto(this);
+	}
+
 	/**
 	 * Resets the CXBoard
 	 */
 	public void reset() {
 		currentPlayer = 0;
 		gameState     = CXGameState.OPEN;
+		ZH = ZR = 0L;
 		initBoard();
 		initDataStructures();
 	}
 
-	// Sets to free all board cells
+	// Sets to free all board cells, only the marked ones need to be cleared
 	private void initBoard() {
-		for (int i = 0; i < M; i++)
-			for (int j = 0; j < N; j++)
-				B[i][j] = CXCellState.FREE;
+		for (int k = 0; k < MCn; k++) {
+			int b = (MC[k] & 0xFFFF)*H1 + M-1-(MC[k] >>> 16);
+			BB[k & 1][b >>> 6] &= ~(1L << b);
+		}
 	}
 
 	//Resets the marked cells list and other data structures
 	private void initDataStructures() {
-		this.MC.clear();
-		this.AC.clear();
+		this.MCn = 0;
+		Arrays.fill(AC, 0L);
 		for (int j = 0; j < N; j++) {
 			RP[j] = M-1;
-			AC.add(j);
+			AC[j >>> 6] |= 1L << j;
 		}
+		this.ACn = N;
 	}
 
 	/**
@@ -132,7 +188,149 @@ public class CXBoard {
 		if (i < 0 || i >= M || j < 0 || j >= N)
 			throw new IndexOutOfBoundsException("Indexes " + i + "," + j + " are out of matrix bounds");
 		else
-			return B[i][j];
+			return state(i, j);
+	}
+
+	// State of cell i, j without bounds check
+	private CXCellState state(int i, int j) {
+		return CELL[get(i, j)];
+	}
+
+	// Ordinal of the state of cell i, j without bounds check
+	private byte get(int i, int j) {
+		int  b = j*H1 + M-1-i;
+		long m = 1L << b;
+		if ((BB[0][b >>> 6] & m) != 0) return 0;
+		if ((BB[1][b >>> 6] & m) != 0) return 1;
+		return 2;
+	}
+
+	/**
+	 * Returns the state of cell <code>i,j</code> as the ordinal of its
+	 * <code>CXCellState</code> (0 for P1, 1 for P2, 2 for FREE).
+	 * <p>
+	 * Unlike <code>cellState</code> it never throws: cells out of the matrix
+	 * bounds are reported as -1.
+	 * </p>
+	 *
+	 * @param i i-th row
+	 * @param j j-th column
+	 *
+	 * @return 0 (P1), 1 (P2), 2 (FREE) or -1 (out of bounds)
+	 */
+	public int cell(int i, int j) {
+		if (i < 0 || i >= M || j < 0 || j >= N)
+			return -1;
+		return get(i, j);
+	}
+
+	/**
+	 * Returns a word of the bitboard of a player.
+	 * <p>
+	 * Cell <code>i,j</code> is bit <code>b = j*(M+1) + M-1-i</code>, stored in word
+	 * <code>b/64</code>; the board takes <code>(N*(M+1)+63)/64</code> words.
+	 * </p>
+	 *
+	 * @param p player (0 first player, 1 second player)
+	 * @param w word index
+	 *
+	 * @return the w-th word of the bitboard of player p
+	 */
+	public long bitboard(int p, int w) {
+		return BB[p][w];
+	}
+
+	/**
+	 * Writes the state of every cell, row by row, into a caller-owned array.
+	 * Cell <code>i,j</code> goes to <code>dst[i*N+j]</code>, encoded as in
+	 * <code>cell</code>.
+	 *
+	 * @param dst destination array of at least M*N entries
+	 *
+	 * @throws IndexOutOfBoundsException If <code>dst</code> is too short
+	 */
+	public void fillCells(byte[] dst) throws IndexOutOfBoundsException {
+		Arrays.fill(dst, 0, M*N, (byte) CXCellState.FREE.ordinal());
+		for (int k = 0; k < MCn; k++)
+			dst[(MC[k] >>> 16)*N + (MC[k] & 0xFFFF)] = (byte) (k & 1);
+	}
+
+	/**
+	 * Reads row <code>i</code>, from left to right, into a caller-owned array.
+	 * Cells are encoded as in <code>cell</code>; at most <code>dst.length</code>
+	 * cells are read.
+	 *
+	 * @param i   row index
+	 * @param dst destination array
+	 *
+	 * @return number of cells read (0 if the row is out of bounds)
+	 */
+	public int readRow(int i, byte[] dst) {
+		return readLine(i, 0, 0, 1, dst);
+	}
+
+	/**
+	 * Reads column <code>j</code>, from top to bottom, into a caller-owned array.
+	 * Cells are encoded as in <code>cell</code>; at most <code>dst.length</code>
+	 * cells are read.
+	 *
+	 * @param j   column index
+	 * @param dst destination array
+	 *
+	 * @return number of cells read (0 if the column is out of bounds)
+	 */
+	public int readColumn(int j, byte[] dst) {
+		return readLine(0, j, 1, 0, dst);
+	}
+
+	/**
+	 * Reads the diagonal starting at <code>i,j</code> towards the bottom right,
+	 * i.e. cells <code>i+k,j+k</code>, into a caller-owned array. Cells are
+	 * encoded as in <code>cell</code>; at most <code>dst.length</code> cells are read.
+	 *
+	 * @param i   row of the first cell
+	 * @param j   column of the first cell
+	 * @param dst destination array
+	 *
+	 * @return number of cells read (0 if <code>i,j</code> is out of bounds)
+	 */
+	public int readDiagonal(int i, int j, byte[] dst) {
+		return readLine(i, j, 1, 1, dst);
+	}
+
+	/**
+	 * Reads the anti-diagonal starting at <code>i,j</code> towards the top right,
+	 * i.e. cells <code>i-k,j+k</code>, into a caller-owned array. Cells are
+	 * encoded as in <code>cell</code>; at most <code>dst.length</code> cells are read.
+	 *
+	 * @param i   row of the first cell
+	 * @param j   column of the first cell
+	 * @param dst destination array
+	 *
+	 * @return number of cells read (0 if <code>i,j</code> is out of bounds)
+	 */
+	public int readAntiDiagonal(int i, int j, byte[] dst) {
+		return readLine(i, j, -1, 1, dst);
+	}
+
+	/**
+	 * Reads the cells <code>i+k*di,j+k*dj</code>, for k = 0, 1, ..., into a
+	 * caller-owned array, stopping at the board edge or when <code>dst</code> is
+	 * full. Cells are encoded as in <code>cell</code>.
+	 *
+	 * @param i   row of the first cell
+	 * @param j   column of the first cell
+	 * @param di  row step
+	 * @param dj  column step
+	 * @param dst destination array
+	 *
+	 * @return number of cells read (0 if <code>i,j</code> is out of bounds)
+	 */
+	public int readLine(int i, int j, int di, int dj, byte[] dst) {
+		int k = 0;
+		for (; k < dst.length && i >= 0 && i < M && j >= 0 && j < N; k++, i += di, j += dj)
+			dst[k] = get(i, j);
+		return k;
 	}
 
 	/**
@@ -146,16 +344,63 @@ public class CXBoard {
 		return  col < 0 || col >= N || RP[col] == -1; 
 	}
 
+	/**
+	 * Returns the row where the next symbol in a column would be placed
+	 *
+	 * @param col column number
+	 *
+	 * @return first free row of col, -1 if col is outside matrix bounds or if it is full
+	 */
+	public int freeRow(int col) {
+		return col < 0 || col >= N ? -1 : RP[col];
+	}
+
 	/**
 	 * Retrieves the last move
 	 *
 	 * @return CXCell object or null
 	 */
 	public CXCell getLastMove() {
-		if (MC.size() == 0) 
+		if (MCn == 0) 
 			return null;
 		else 
-			return MC.peekLast();
+			return cell(MCn-1);
+	}
+
+	// CXCell for the k-th move of the history
+	private CXCell cell(int k) {
+		int i = MC[k] >>> 16, j = MC[k] & 0xFFFF, p = k & 1;
+		if (FC == null)
+			FC = new CXCell[2*M*N];
+		int f = p*M*N + i*N + j;
+		if (FC[f] == null)
+			FC[f] = new CXCell(i, j, Player[p]);
+		return FC[f];
+	}
+
+	/**
+	 * Returns the Zobrist key of the current position.
+	 * <p>
+	 * The key is updated incrementally by <code>markColumn</code> and
+	 * <code>unmarkColumn</code> and it is the same for every board of the same
+	 * size, so that it can identify positions across boards and runs.
+	 * </p>
+	 *
+	 * @return 64-bit position key
+	 */
+	public long hash() {
+		return ZH;
+	}
+
+	/**
+	 * Returns the Zobrist key of the current position mirrored left to right,
+	 * i.e. the key that <code>hash()</code> would return after playing every
+	 * move in column <code>N-1-j</code> instead of <code>j</code>.
+	 *
+	 * @return 64-bit key of the mirrored position
+	 */
+	public long mirrorHash() {
+		return ZR;
 	}
 
 	/**
@@ -182,7 +427,7 @@ public class CXBoard {
 	 * @return number of free cells
 	 */
 	public int numOfFreeCells() {
-		return M*N-MC.size();
+		return M*N-MCn;
 	}
 	
 	/**
@@ -191,7 +436,7 @@ public class CXBoard {
 	 * @return number of marked cells
 	 */
 	public int numOfMarkedCells() {
-		return MC.size();
+		return MCn;
 	}
 
 	/**
@@ -208,16 +453,22 @@ public class CXBoard {
 			throw new IllegalStateException("Column " + col + " is full.");
 		} else {
 			int row = RP[col]--;
-			if (RP[col] == -1) AC.remove(col);
-			B[row][col] = Player[currentPlayer];
-			CXCell newc = new CXCell(row, col, Player[currentPlayer]);
-			MC.add(newc); // Add move to the history
-
+			if (RP[col] == -1) {
+				AC[col >>> 6] &= ~(1L << col);
+				ACn--;
+			}
+			int b = col*H1 + M-1-row;
+			BB[currentPlayer][b >>> 6] |= 1L << b;
+			MC[MCn++] = row << 16 | col; // Add move to the history
+			ZH ^= Z[currentPlayer*M*N + row*N + col];
+			ZR ^= Z[currentPlayer*M*N + row*N + N-1-col];
+
+			int p = currentPlayer;
 			currentPlayer = (currentPlayer + 1) % 2;
 
-			if (isWinningMove(row, col))
-				gameState = B[row][col] == CXCellState.P1 ? CXGameState.WINP1 : CXGameState.WINP2;
-			else if (MC.size() == M * N)
+			if (isWinningMove(p, row, col))
+				gameState = p == 0 ? CXGameState.WINP1 : CXGameState.WINP2;
+			else if (MCn == M * N)
 				gameState = CXGameState.DRAW;
 
 			return gameState;
@@ -230,14 +481,20 @@ public class CXBoard {
 	 * @throws IllegalStateException If there is no move to undo
 	 */
 	public void unmarkColumn() throws IllegalStateException {
-		if (MC.size() == 0) {
+		if (MCn == 0) {
 			throw new IllegalStateException("No move to undo");
 		} else {
-			CXCell oldc = MC.removeLast();
-
-			B[oldc.i][oldc.j] = CXCellState.FREE;
-			RP[oldc.j]++;
-			if(RP[oldc.j] == 0) AC.add(oldc.j); 
+			int col = MC[--MCn] & 0xFFFF;
+
+			RP[col]++;
+			int b = col*H1 + M-1-RP[col];
+			BB[MCn & 1][b >>> 6] &= ~(1L << b);
+			ZH ^= Z[(MCn & 1)*M*N + RP[col]*N + col];
+			ZR ^= Z[(MCn & 1)*M*N + RP[col]*N + N-1-col];
+			if(RP[col] == 0) {
+				AC[col >>> 6] |= 1L << col;
+				ACn++;
+			}
 
 			currentPlayer = (currentPlayer + 1) % 2;
 			gameState = CXGameState.OPEN;
@@ -254,7 +511,10 @@ public class CXBoard {
 	 * @return List of marked cells
 	 */
 	public CXCell[] getMarkedCells() {
-		return MC.toArray(new CXCell[MC.size()]);
+		CXCell[] C = new CXCell[MCn];
+		for (int k = 0; k < MCn; k++)
+			C[k] = cell(k);
+		return C;
 	}
 
 	/**
@@ -264,11 +524,167 @@ public class CXBoard {
    * </p>
    * 
    * @return List of available column indexes 
+   * @see #fillAvailableColumns(int[]) fillAvailableColumns
    */
   public Integer[] getAvailableColumns() {
-		return AC.toArray(new Integer[AC.size()]);
+		Integer[] L = new Integer[ACn];
+		for (int w = 0, k = 0; w < AC.length; w++)
+			for (long m = AC[w]; m != 0; m &= m - 1)
+				L[k++] = (w << 6) + Long.numberOfTrailingZeros(m);
+		return L;
   }
 
+	/**
+	 * Writes the indexes of the still available columns, in increasing order,
+	 * into a caller-owned array.
+	 *
+	 * @param dst destination array, at least as long as the number of available columns
+	 *
+	 * @return number of available columns written in <code>dst</code>
+	 * @throws IndexOutOfBoundsException If <code>dst</code> is too short
+	 */
+	public int fillAvailableColumns(int[] dst) throws IndexOutOfBoundsException {
+		int k = 0;
+		for (int w = 0; w < AC.length; w++)
+			for (long m = AC[w]; m != 0; m &= m - 1)
+				dst[k++] = (w << 6) + Long.numberOfTrailingZeros(m);
+		return k;
+	}
+
+	/**
+	 * Returns the still available columns as a bit mask: bit <code>j</code> is set
+	 * if column <code>j</code> is not full.
+	 * <p>
+	 * Only the first 64 columns fit in the mask; use
+	 * <code>fillAvailableColumns</code> for wider boards.
+	 * </p>
+	 *
+	 * @return mask of available columns
+	 */
+	public long availableColumnsMask() {
+		return AC[0];
+	}
+
+	/**
+	 * Returns a word of the mask of still available columns: bit <code>k</code>
+	 * is set if column <code>64*w+k</code> is not full.
+	 *
+	 * @param w word index, between 0 and <code>(N-1)/64</code>
+	 *
+	 * @return w-th word of the mask of available columns
+	 */
+	public long availableColumnsMask(int w) {
+		return AC[w];
+	}
+
+	/**
+	 * Returns the columns where the player to move wins immediately, as a bit
+	 * mask: bit <code>k</code> is set for column <code>64*w+k</code>.
+	 *
+	 * @param w word index, between 0 and <code>(N-1)/64</code>
+	 *
+	 * @return w-th word of the mask of winning columns
+	 */
+	public long winningColumnsMask(int w) {
+		return threatColumns(currentPlayer, 0, w);
+	}
+
+	/**
+	 * Returns the columns where the opponent of the player to move would win
+	 * immediately, i.e. the columns that must be blocked, as a bit mask: bit
+	 * <code>k</code> is set for column <code>64*w+k</code>.
+	 * <p>
+	 * If more than one column is set the opponent cannot be stopped.
+	 * </p>
+	 *
+	 * @param w word index, between 0 and <code>(N-1)/64</code>
+	 *
+	 * @return w-th word of the mask of columns to block
+	 */
+	public long blockingColumnsMask(int w) {
+		return threatColumns(1 - currentPlayer, 0, w);
+	}
+
+	/**
+	 * Returns the poisoned columns, as a bit mask: bit <code>k</code> is set for
+	 * column <code>64*w+k</code>. A column is poisoned if, once the player to move
+	 * plays in it, the opponent wins by playing in the same column.
+	 *
+	 * @param w word index, between 0 and <code>(N-1)/64</code>
+	 *
+	 * @return w-th word of the mask of poisoned columns
+	 */
+	public long poisonedColumnsMask(int w) {
+		return threatColumns(1 - currentPlayer, 1, w);
+	}
+
+	// Columns 64*w .. 64*w+63 where the h-th free cell above the first one
+	// completes an alignment of player p
+	private long threatColumns(int p, int h, int w) {
+		long cols = 0L;
+		if (W == 1) {
+			if (w != 0)
+				return 0L;
+			long T = threatCells(BB[p][0]);
+			for (int j = 0; j < N; j++)
+				if (RP[j] >= h && (T >>> (j*H1 + M-1-RP[j]+h) & 1L) != 0)
+					cols |= 1L << j;
+		} else {
+			int end = Math.min(N, (w+1) << 6);
+			for (int j = w << 6; j < end; j++)
+				if (RP[j] >= h && isThreat(p, RP[j]-h, j))
+					cols |= 1L << (j & 63);
+		}
+		return cols;
+	}
+
+	// Cells that would complete an alignment of the stones in P (single word boards)
+	private long threatCells(long P) {
+		if (SR == null)
+			SR = new long[X];
+		return lineThreats(P, 1) | lineThreats(P, H1) | lineThreats(P, H1+1) | lineThreats(P, H1-1);
+	}
+
+	// Cells with a stones of P before them and X-1-a after them in direction d,
+	// for some a: SR[b] holds the cells followed by b stones
+	private long lineThreats(long P, int d) {
+		SR[0] = -1L;
+		for (int b = 1; b < X; b++)
+			SR[b] = b*d < 64 ? SR[b-1] & (P >>> b*d) : 0L;
+		long L = -1L, T = 0L;
+		for (int a = 0; a < X && L != 0; a++) {
+			T |= L & SR[X-1-a];
+			L  = (a+1)*d < 64 ? L & (P << (a+1)*d) : 0L;
+		}
+		return T;
+	}
+
+	// Check whether a stone of player p in cell i,j (free, or just marked by p)
+	// completes an alignment
+	private boolean isThreat(int p, int i, int j) {
+		return run(p, i, j, 0, -1) + run(p, i, j, 0, 1) >= X-1  // horizontal
+		    || run(p, i, j, 1, 0)                       >= X-1  // vertical
+		    || run(p, i, j, -1, -1) + run(p, i, j, 1, 1) >= X-1  // diagonal
+		    || run(p, i, j, 1, -1) + run(p, i, j, -1, 1) >= X-1; // anti-diagonal
+	}
+
+	// Number of consecutive stones of player p after cell i,j in direction di,dj, at most X-1
+	private int run(int p, int i, int j, int di, int dj) {
+		int n = 0;
+		for (i += di, j += dj; n < X-1 && i >= 0 && i < M && j >= 0 && j < N && get(i, j) == p; i += di, j += dj)
+			n++;
+		return n;
+	}
+
+	/**
+	 * Returns the number of still available columns.
+	 *
+	 * @return number of columns that are not full
+	 */
+	public int numOfAvailableColumns() {
+		return ACn;
+	}
+
 	/**
    * Returns a copy of the main board
    *
@@ -278,8 +694,9 @@ public class CXBoard {
 		CXCellState[][] C = new CXCellState[M][N];
 
 		for(int i = 0; i < M; i++)
-			for(int j = 0; j < N; j++)
-				C[i][j] = B[i][j];		
+			Arrays.fill(C[i], CXCellState.FREE);
+		for(int k = 0; k < MCn; k++)
+			C[MC[k] >>> 16][MC[k] & 0xFFFF] = Player[k & 1];
 
 		return C;
 	}
@@ -290,45 +707,75 @@ public class CXBoard {
 	 * @return A CXBoard
 	 */
 	public CXBoard copy() {
-		CXBoard C = new CXBoard(M,N,X);
-		for(CXCell c : this.getMarkedCells())
-			C.markColumn(c.j);
-		return C;
+		return new CXBoard(this);
   }
 
+	/**
+	 * Copies the state of this CXBoard into another one of the same size,
+	 * without allocating.
+	 *
+	 * @param C Destination board
+	 *
+	 * @throws IllegalArgumentException If <code>C</code> has different M, N or X
+	 */
+	public void copyInto(CXBoard C) throws IllegalArgumentException {
+		if (C.M != M || C.N != N || C.X != X)
+			throw new IllegalArgumentException("Cannot copy a " + M + "," + N + "," + X + " board into a " + C.M + "," + C.N + "," + C.X + " board");
+
+		if (W > 1 && MCn + C.MCn < W) {
+			// few stones on a large board: clear those of C and set ours
+			C.initBoard();
+			for (int k = 0; k < MCn; k++) {
+				int b = (MC[k] & 0xFFFF)*H1 + M-1-(MC[k] >>> 16);
+				C.BB[k & 1][b >>> 6] |= 1L << b;
+			}
+		} else {
+			System.arraycopy(BB[0], 0, C.BB[0], 0, W);
+			System.arraycopy(BB[1], 0, C.BB[1], 0, W);
+		}
+		System.arraycopy(MC, 0, C.MC, 0, MCn);
+		System.arraycopy(RP, 0, C.RP, 0, N);
+		System.arraycopy(AC, 0, C.AC, 0, AC.length);
+		C.MCn           = MCn;
+		C.ACn           = ACn;
+		C.ZH            = ZH;
+		C.ZR            = ZR;
+		C.currentPlayer = currentPlayer;
+		C.gameState     = gameState;
+	}
 
-	// Check winning state from cell i, j
-	private boolean isWinningMove(int i, int j) {
-		CXCellState s = B[i][j];
-		int n;
-
-		// Useless pedantic check
-		if (s == CXCellState.FREE)
-			return false;
-
-		// Horizontal check
-		n = 1;
-		for (int k = 1; j-k >= 0 && B[i][j-k] == s; k++) n++; // backward check
-		for (int k = 1; j+k <  N && B[i][j+k] == s; k++) n++; // forward check
-		if (n >= X) return true;
-
-		// Vertical check
-		n = 1;
-		for (int k = 1; i+k <  M && B[i+k][j] == s; k++) n++;
-		if (n >= X) return true;
 
-		// Diagonal check
-		n = 1;
-		for (int k = 1; i-k >= 0 && j-k >= 0 && B[i-k][j-k] == s; k++) n++; // backward check
-		for (int k = 1; i+k <  M && j+k <  N && B[i+k][j+k] == s; k++) n++; // forward check
-		if (n >= X) return true;
+	// Zobrist keys for an (M,N,X) board, seeded from the game parameters only
+	private static long[] zobristKeys(int M, int N, int X) {
+		SplittableRandom rand = new SplittableRandom(((long) M << 42) ^ ((long) N << 21) ^ X);
+		long[] K = new long[2*M*N];
+		for (int k = 0; k < K.length; k++)
+			K[k] = rand.nextLong();
+		return K;
+	}
 
-		// Anti-diagonal check
-		n = 1;
-		for (int k = 1; i-k >= 0 && j+k <  N && B[i-k][j+k] == s; k++) n++; // backward check
-		for (int k = 1; i+k <  M && j-k >= 0 && B[i+k][j-k] == s; k++) n++; // forward check
-		if (n >= X) return true;
+	// Check whether player p has X aligned symbols. Only the last move, in cell
+	// row,col, can have completed an alignment, since the game was still open
+	// before it: single word boards check every line with shifts, larger boards
+	// count the runs through the move
+	private boolean isWinningMove(int p, int row, int col) {
+		if (W > 1)
+			return isThreat(p, row, col);
+		long b = BB[p][0];
+		return aligned(b, 1)    // vertical
+		    || aligned(b, H1)   // horizontal
+		    || aligned(b, H1+1) // diagonal
+		    || aligned(b, H1-1); // anti-diagonal
+	}
 
-		return false;
+	// Check for X consecutive bits in direction d: each round doubles the length
+	// of the runs left in m, a last round tops them up to exactly X
+	private boolean aligned(long m, int d) {
+		int r = 1;
+		for (; 2*r <= X && m != 0; r <<= 1)
+			m = r*d < 64 ? m & (m >>> r*d) : 0L;
+		if (r < X && m != 0)
+			m = (X-r)*d < 64 ? m & (m >>> (X-r)*d) : 0L;
+		return m != 0;
 	}
 }
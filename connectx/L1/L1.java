@@ -20,9 +20,7 @@ package connectx.L1;
 
 import connectx.CXPlayer;
 import connectx.CXBoard;
-import connectx.CXGameState;
 import connectx.CXCell;
-import java.util.TreeSet;
 import java.util.Random;
 import java.util.Arrays;
 import java.util.concurrent.TimeoutException;
@@ -36,8 +34,6 @@ import java.util.concurrent.TimeoutException;
  */
 public class L1 implements CXPlayer {
 	private Random rand;
-	private CXGameState myWin;
-	private CXGameState yourWin;
 	private int  TIMEOUT;
 	private long START;
 
@@ -48,8 +44,6 @@ public class L1 implements CXPlayer {
 	public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
 		// New random seed for each game
 		rand    = new Random(System.currentTimeMillis());
-		myWin   = first ? CXGameState.WINP1 : CXGameState.WINP2;
-		yourWin = first ? CXGameState.WINP2 : CXGameState.WINP1;
 		TIMEOUT = timeout_in_secs;
 	}
 
@@ -64,15 +58,16 @@ public class L1 implements CXPlayer {
 	public int selectColumn(CXBoard B) {
 		START = System.currentTimeMillis(); // Save starting time
 
-		Integer[] L = B.getAvailableColumns();
-		int save    = L[rand.nextInt(L.length)]; // Save a random column 
+		int[] L  = new int[B.N];
+		int   n  = B.fillAvailableColumns(L);
+		int save = L[rand.nextInt(n)]; // Save a random column 
 
 		try {
-			int col = singleMoveWin(B,L);
+			int col = singleMoveWin(B);
 			if(col != -1) 
 				return col;
 			else
-				return singleMoveBlock(B,L);
+				return singleMoveBlock(B,L,n);
 		} catch (TimeoutException e) {
 			System.err.println("Timeout!!! Random column selected");
 			return save;
@@ -89,14 +84,13 @@ public class L1 implements CXPlayer {
 	 *
 	 * Returns the winning column if there is one, otherwise -1
 	 */	
-	private int singleMoveWin(CXBoard B, Integer[] L) throws TimeoutException {
-    for(int i : L) {
+	private int singleMoveWin(CXBoard B) throws TimeoutException {
+		for(int w = 0; w <= (B.N-1) >>> 6; w++) {
 			checktime(); // Check timeout at every iteration
-      CXGameState state = B.markColumn(i);
-      if (state == myWin)
-        return i; // Winning column found: return immediately
-      B.unmarkColumn();
-    }
+			long m = B.winningColumnsMask(w);
+			if (m != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(m); // Winning column found: return immediately
+		}
 		return -1;
 	}
 
@@ -105,37 +99,41 @@ public class L1 implements CXPlayer {
    *
    * Returns a blocking column if there is one, otherwise a random one
    */
-	private int singleMoveBlock(CXBoard B, Integer[] L) throws TimeoutException {
-		TreeSet<Integer> T = new TreeSet<Integer>(); // We collect here safe column indexes
+	private int singleMoveBlock(CXBoard B, int[] L, int n) throws TimeoutException {
+		int[] T = new int[n]; // We collect here safe column indexes
+		int   t = 0;
 
-		for(int i : L) {
+		// Columns where the adversary wins with his next move: we must play there
+		int block = -1, threats = 0;
+		for(int w = 0; w <= (B.N-1) >>> 6; w++) {
 			checktime();
-			T.add(i); // We consider column i as a possible move
-			B.markColumn(i);
-
-			int j;
-			boolean stop;
+			long m = B.blockingColumnsMask(w);
+			if (m != 0)
+				block = (w << 6) + Long.numberOfTrailingZeros(m);
+			threats += Long.bitCount(m);
+		}
 
-			for(j = 0, stop=false; j < L.length && !stop; j++) {
-				//try {Thread.sleep((int)(0.2*1000*TIMEOUT));} catch (Exception e) {} // Uncomment to test timeout
+		// Columns where the adversary wins above our move, one mask word at a time
+		long poisoned = 0L;
+		for(int k = 0, w = -1; k < n; k++) {
+			int i = L[k];
+			if (i >>> 6 != w) {
 				checktime();
-				if(!B.fullColumn(L[j])) {
-					CXGameState state = B.markColumn(L[j]);
-					if (state == yourWin) {
-						T.remove(i); // We ignore the i-th column as a possible move
-						stop = true; // We don't need to check more
-					}
-					B.unmarkColumn(); // 
-				}
+				w = i >>> 6;
+				poisoned = B.poisonedColumnsMask(w);
 			}
-			B.unmarkColumn();
+			// We ignore the i-th column if it leaves a threat open or if the adversary can win above it
+			if (threats > 1 || (threats == 1 && i != block))
+				continue;
+			if ((poisoned >>> (i & 63) & 1L) != 0)
+				continue;
+			T[t++] = i; // We consider column i as a possible move
 		}
 
-		if (T.size() > 0) {
-			Integer[] X = T.toArray(new Integer[T.size()]);
- 			return X[rand.nextInt(X.length)];
+		if (t > 0) {
+ 			return T[rand.nextInt(t)];
 		} else {
-			return L[rand.nextInt(L.length)];
+			return L[rand.nextInt(n)];
 		}
 	}
 
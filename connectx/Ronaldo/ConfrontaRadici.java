@@ -0,0 +1,72 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+import java.util.Random;
+
+/**
+ * Confronto tra le due ricerche della radice di Ronaldo: finestra di aspirazione e MTD(f).
+ * <p>
+ * Gioca mosse casuali (con il seme indicato) fino a ottenere posizioni aperte con un numero
+ * di pezzi tra M*N/8 e M*N/4, le cerca con entrambe le ricerche fino alla profondità
+ * indicata, con una tabella delle trasposizioni nuova per ogni posizione, e stampa i nodi
+ * visitati, le mosse e i punteggi. I punteggi di solito coincidono (la tabella può dare
+ * piccole differenze) e le mosse possono differire a parità.
+ * </p>
+ * <p>
+ * Uso: java -cp ".." connectx.Ronaldo.ConfrontaRadici M N X profondità [posizioni] [seme]
+ * </p>
+ */
+public class ConfrontaRadici {
+
+    // Tempo di ogni ricerca (secondi), abbastanza da arrivare sempre alla profondità
+    private static final int SECONDI = 3600;
+
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Uso: java -cp \"..\" connectx.Ronaldo.ConfrontaRadici M N X profondità [posizioni] [seme]");
+            System.exit(1);
+        }
+        int M = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int X = Integer.parseInt(args[2]);
+        int profondita = Integer.parseInt(args[3]);
+        int posizioni = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        Random random = new Random(args.length > 5 ? Long.parseLong(args[5]) : 0L);
+
+        long totaleAspirazione = 0, totaleMtdf = 0;
+        for (int p = 0; p < posizioni; p++) {
+            CXBoard B = posizione(M, N, X, random);
+            boolean primo = B.currentPlayer() == 0;
+
+            Ronaldo aspirazione = new Ronaldo(Ronaldo.MEGABYTE_TABELLA, 1, false, false, false);
+            aspirazione.initPlayer(M, N, X, primo, SECONDI);
+            long nodiAspirazione = aspirazione.cercaFinoA(B.copy(), profondita);
+
+            Ronaldo mtdf = new Ronaldo(Ronaldo.MEGABYTE_TABELLA, 1, false, false, true);
+            mtdf.initPlayer(M, N, X, primo, SECONDI);
+            long nodiMtdf = mtdf.cercaFinoA(B.copy(), profondita);
+
+            totaleAspirazione += nodiAspirazione;
+            totaleMtdf += nodiMtdf;
+            System.out.println("Posizione " + p + " (" + B.numOfMarkedCells() + " pezzi): aspirazione "
+                    + nodiAspirazione + " nodi, mossa " + aspirazione.mossaRadice() + ", punteggio " + aspirazione.punteggioRadice()
+                    + "; MTD(f) " + nodiMtdf + " nodi, mossa " + mtdf.mossaRadice() + ", punteggio " + mtdf.punteggioRadice());
+        }
+        System.out.println("Totale: aspirazione " + totaleAspirazione + " nodi, MTD(f) " + totaleMtdf + " nodi");
+    }
+
+    //Posizione aperta casuale con un numero di pezzi tra M*N/8 e M*N/4
+    private static CXBoard posizione(int M, int N, int X, Random random) {
+        while (true) {
+            CXBoard B = new CXBoard(M, N, X);
+            int pezzi = M * N / 8 + random.nextInt(M * N / 8 + 1);
+            while (B.gameState() == CXGameState.OPEN && B.numOfMarkedCells() < pezzi) {
+                Integer[] colonne = B.getAvailableColumns();
+                B.markColumn(colonne[random.nextInt(colonne.length)]);
+            }
+            if (B.gameState() == CXGameState.OPEN) return B;
+        }
+    }
+}
@@ -1,11 +0,0 @@
-package connectx.Ronaldo;
-
-public class Coppia <T1, T2> {
-    public final T1 first;
-    public final T2 second;
-
-    public Coppia(T1 first, T2 second) {
-        this.first = first;
-        this.second = second;
-    }
-}
@@ -0,0 +1,98 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generatore offline del libro delle aperture di Ronaldo (vedi LibroAperture).
+ * <p>
+ * Visita tutte le posizioni aperte con meno di ply pezzi, una sola tra ogni posizione e
+ * la sua speculare, e per ognuna salva la mossa e il punteggio di una ricerca di Ronaldo
+ * con il tempo indicato. La ricerca si ferma prima se dimostra il risultato.
+ * </p>
+ * <p>
+ * Uso: java -cp ".." connectx.Ronaldo.GeneraLibro M N X ply secondi [file]
+ * </p>
+ */
+public class GeneraLibro {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Uso: java -cp \"..\" connectx.Ronaldo.GeneraLibro M N X ply secondi [file]");
+            System.exit(1);
+        }
+        int M = Integer.parseInt(args[0]);
+        int N = Integer.parseInt(args[1]);
+        int X = Integer.parseInt(args[2]);
+        int ply = Integer.parseInt(args[3]);
+        int secondi = Integer.parseInt(args[4]);
+        String file = args.length > 5 ? args[5] : LibroAperture.nomeFile(M, N, X);
+
+        //Un Ronaldo per chi muove per primo e uno per chi muove per secondo, con la propria tabella
+        Ronaldo primo = new Ronaldo();
+        primo.initPlayer(M, N, X, true, secondi);
+        Ronaldo secondo = new Ronaldo();
+        secondo.initPlayer(M, N, X, false, secondi);
+
+        //Chiave canonica -> punteggio e mossa, già nell'ordine del file
+        Map<Long, Long> libro = new TreeMap<>();
+        List<CXBoard> livello = new ArrayList<>();
+        livello.add(new CXBoard(M, N, X));
+        for (int p = 0; p < ply && !livello.isEmpty(); p++) {
+            System.out.println("Ply " + p + ": " + livello.size() + " posizioni");
+            List<CXBoard> prossimo = new ArrayList<>();
+            Set<Long> visti = new HashSet<>();
+            for (CXBoard B : livello) {
+                Ronaldo r = B.currentPlayer() == 0 ? primo : secondo;
+                int mossa = r.selectColumn(B.copy());
+                salva(libro, B, mossa, r.punteggioRadice());
+
+                if (p + 1 == ply) continue;
+                for (int col : B.getAvailableColumns()) {
+                    CXBoard figlio = B.copy();
+                    figlio.markColumn(col);
+                    if (figlio.gameState() == CXGameState.OPEN
+                            && visti.add(Math.min(figlio.hash(), figlio.mirrorHash())))
+                        prossimo.add(figlio);
+                }
+            }
+            livello = prossimo;
+        }
+        scrivi(file, M, N, X, libro);
+        System.out.println("Libro scritto in " + file + ": " + libro.size() + " posizioni");
+    }
+
+    //Salva la mossa della posizione B con la chiave canonica, riflettendola se la chiave è quella speculare
+    private static void salva(Map<Long, Long> libro, CXBoard B, int mossa, long punteggio) {
+        long h = B.hash(), r = B.mirrorHash();
+        if (r < h) mossa = B.N - 1 - mossa;
+        punteggio = Math.max(Math.min(punteggio, LibroAperture.PUNTEGGIO_MASSIMO), -LibroAperture.PUNTEGGIO_MASSIMO);
+        libro.put(Math.min(h, r), punteggio << 16 | mossa);
+    }
+
+    private static void scrivi(String file, int M, int N, int X, Map<Long, Long> libro) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(LibroAperture.MAGIA);
+            out.writeInt(LibroAperture.VERSIONE);
+            out.writeInt(M);
+            out.writeInt(N);
+            out.writeInt(X);
+            out.writeInt(libro.size());
+            for (Map.Entry<Long, Long> e : libro.entrySet()) {
+                out.writeLong(e.getKey());
+                out.writeLong(e.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package connectx.Ronaldo;
+
+/**
+ * Gestione del tempo di una mossa, con scadenze in nanosecondi (System.nanoTime).
+ * <p>
+ * Il limite duro è la scadenza oltre la quale la ricerca si interrompe: scaduto() viene
+ * chiamato a ogni nodo ma legge l'orologio solo ogni tot chiamate, un intervallo che si
+ * adatta perché tra due letture passi circa un millisecondo. Il limite morbido e la
+ * previsione della durata della prossima iterazione (dalla durata dell'ultima e dal
+ * fattore di crescita tra le ultime due) decidono se conviene iniziare un'altra
+ * iterazione dell'iterative deepening: una iterazione interrotta non serve a nulla.
+ * </p>
+ * <p>
+ * scaduto() va chiamato da un solo thread; inizio() e scadutoOra() da qualunque thread.
+ * </p>
+ */
+class GestoreTempo {
+
+    // Frazioni del timeout: oltre il limite duro la ricerca si ferma, oltre quello morbido
+    // non inizia una nuova iterazione
+    private static final double LIMITE_DURO = 0.95;
+    private static final double LIMITE_MORBIDO = 0.6;
+    // Frazione del timeout concessa al risolutore esatto: se non finisce, alla ricerca euristica
+    // resta quasi tutto il tempo fino al limite morbido per iniziare le sue iterazioni
+    private static final double LIMITE_RISOLUTORE = 0.15;
+    // Fattore di crescita di una iterazione quando le due precedenti sono troppo brevi per
+    // misurarlo, e suo massimo (il rapporto tra iterazioni molto brevi è solo rumore)
+    private static final double CRESCITA_PREDEFINITA = 2.0;
+    private static final double CRESCITA_MASSIMA = 10.0;
+    private static final long ITERAZIONE_MISURABILE = 1_000_000L;
+    // Nanosecondi desiderati tra due letture dell'orologio
+    private static final long NANO_TRA_LETTURE = 1_000_000L;
+    private static final int MASSIMO_INTERVALLO = 1 << 14;
+
+    private final long durata, morbido, risolutore;
+
+    private volatile long inizio;
+    private volatile boolean scaduto;
+
+    // Chiamate a scaduto() tra due letture dell'orologio, e quelle che mancano alla prossima
+    private int intervallo = 1;
+    private int mancano = 1;
+    private long ultimaLettura;
+
+    // Inizio dell'iterazione corrente e durata delle ultime due iterazioni completate
+    private long inizioIterazione;
+    private long ultima, penultima;
+
+    /**
+     * @param timeoutSecondi tempo a disposizione per ogni mossa, in secondi
+     */
+    GestoreTempo(int timeoutSecondi) {
+        long timeout = timeoutSecondi * 1_000_000_000L;
+        this.durata = (long) (timeout * LIMITE_DURO);
+        this.morbido = (long) (timeout * LIMITE_MORBIDO);
+        this.risolutore = (long) (timeout * LIMITE_RISOLUTORE);
+    }
+
+    /**
+     * Inizia il conteggio del tempo di una mossa.
+     *
+     * @param inizio istante iniziale della mossa, da System.nanoTime()
+     */
+    void inizia(long inizio) {
+        this.inizio = inizio;
+        scaduto = false;
+        ultimaLettura = inizio;
+        intervallo = mancano = 1;
+        inizioIterazione = inizio;
+        ultima = penultima = 0L;
+    }
+
+    long inizio() {
+        return inizio;
+    }
+
+    // Nanosecondi passati dall'inizio della mossa
+    long trascorso() {
+        return System.nanoTime() - inizio;
+    }
+
+    /*
+     * Vero se il limite duro è stato superato. Legge l'orologio solo ogni intervallo chiamate,
+     * raddoppiando l'intervallo se le letture sono troppo vicine e dimezzandolo se sono troppo lontane.
+     */
+    boolean scaduto() {
+        if (scaduto) return true;
+        if (--mancano > 0) return false;
+
+        long ora = System.nanoTime();
+        long passato = ora - ultimaLettura;
+        ultimaLettura = ora;
+        if (passato < NANO_TRA_LETTURE / 2)
+            intervallo = Math.min(intervallo * 2, MASSIMO_INTERVALLO);
+        else if (passato > NANO_TRA_LETTURE * 2)
+            intervallo = Math.max(intervallo / 2, 1);
+        mancano = intervallo;
+
+        scaduto = ora - inizio >= durata;
+        return scaduto;
+    }
+
+    // Come scaduto(), ma legge sempre l'orologio e si può chiamare da qualunque thread
+    boolean scadutoOra() {
+        return scaduto || trascorso() >= durata;
+    }
+
+    // Vero se il tempo concesso al risolutore esatto è finito
+    boolean oltreRisolutore() {
+        return trascorso() >= risolutore;
+    }
+
+    // Segnala l'inizio di una nuova iterazione
+    void inizioIterazione() {
+        inizioIterazione = System.nanoTime();
+    }
+
+    // Segnala la fine dell'iterazione iniziata con inizioIterazione(), che è stata completata
+    void fineIterazione() {
+        penultima = ultima;
+        ultima = System.nanoTime() - inizioIterazione;
+    }
+
+    /*
+     * Vero se conviene iniziare un'altra iterazione: il limite morbido non è superato e la
+     * durata prevista, l'ultima per il fattore di crescita, finisce entro il limite duro.
+     */
+    boolean puoIniziareIterazione() {
+        long passato = trascorso();
+        if (passato >= morbido) return false;
+
+        double crescita = penultima >= ITERAZIONE_MISURABILE
+                ? Math.min(Math.max((double) ultima / penultima, 1.0), CRESCITA_MASSIMA)
+                : CRESCITA_PREDEFINITA;
+        return passato + ultima * crescita < durata;
+    }
+}
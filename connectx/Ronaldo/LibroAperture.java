@@ -0,0 +1,119 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Libro delle aperture di Ronaldo per una dimensione della tavola, letto da file con memory mapping.
+ * <p>
+ * Il file, scritto da GeneraLibro, ha un'intestazione di sei int (MAGIA, VERSIONE, M, N, X e numero
+ * di posizioni) seguita dalle posizioni ordinate per chiave, ognuna con due long: la chiave Zobrist
+ * canonica e le informazioni (punteggio nei 48 bit alti, mossa nei 16 bassi). La chiave canonica è
+ * la minore tra hash() e mirrorHash(), così una posizione e la sua speculare occupano una sola voce;
+ * la mossa è quella della posizione con la chiave canonica.
+ * </p>
+ * <p>
+ * Aprire il libro non legge il file: le pagine vengono caricate dal sistema operativo solo quando
+ * la ricerca binaria le tocca.
+ * </p>
+ */
+public class LibroAperture {
+
+    static final int MAGIA = 0x524C4942; // "RLIB"
+    static final int VERSIONE = 1;
+    static final int INTESTAZIONE = 6 * Integer.BYTES;
+
+    // Limiti del punteggio salvato in 48 bit, le vittorie e le sconfitte vengono saturate
+    static final long PUNTEGGIO_MASSIMO = (1L << 47) - 1;
+
+    private final LongBuffer posizioni;
+    private final int n;
+    private final int N;
+
+    // Risultato dell'ultima chiamata a cerca
+    private int mossa;
+    private long punteggio;
+
+    private LibroAperture(LongBuffer posizioni, int n, int N) {
+        this.posizioni = posizioni;
+        this.n = n;
+        this.N = N;
+    }
+
+    /**
+     * Nome del file del libro per una tavola M x N con X pezzi da allineare.
+     */
+    public static String nomeFile(int M, int N, int X) {
+        return "ronaldo-" + M + "x" + N + "x" + X + ".libro";
+    }
+
+    /**
+     * Apre il libro nel file indicato, che deve essere per una tavola M x N con X pezzi da allineare.
+     *
+     * @throws IOException se il file non si può leggere o non è un libro per questa tavola
+     */
+    public static LibroAperture apri(Path file, int M, int N, int X) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+        }
+        if (buffer.capacity() < INTESTAZIONE || buffer.getInt(0) != MAGIA || buffer.getInt(4) != VERSIONE)
+            throw new IOException(file + " non è un libro delle aperture");
+        if (buffer.getInt(8) != M || buffer.getInt(12) != N || buffer.getInt(16) != X)
+            throw new IOException(file + " è un libro per un'altra tavola");
+        int n = buffer.getInt(20);
+        if (n < 0 || buffer.capacity() != INTESTAZIONE + (long) n * 2 * Long.BYTES)
+            throw new IOException(file + " è incompleto");
+
+        buffer.position(INTESTAZIONE);
+        return new LibroAperture(buffer.slice().asLongBuffer(), n, N);
+    }
+
+    /**
+     * Cerca la posizione B nel libro. Se la trova, la mossa da giocare in B e il suo
+     * punteggio sono restituiti da mossa() e punteggio().
+     *
+     * @return true se la posizione è nel libro
+     */
+    public boolean cerca(CXBoard B) {
+        long h = B.hash(), r = B.mirrorHash();
+        boolean specchio = r < h;
+        long chiave = specchio ? r : h;
+
+        int basso = 0, alto = n - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            long k = posizioni.get(2 * medio);
+            if (k < chiave)
+                basso = medio + 1;
+            else if (k > chiave)
+                alto = medio - 1;
+            else {
+                long info = posizioni.get(2 * medio + 1);
+                mossa = (int) (info & 0xFFFF);
+                if (specchio) mossa = N - 1 - mossa;
+                punteggio = info >> 16;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int mossa() {
+        return mossa;
+    }
+
+    public long punteggio() {
+        return punteggio;
+    }
+
+    public int size() {
+        return n;
+    }
+}
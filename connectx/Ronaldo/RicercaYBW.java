@@ -0,0 +1,286 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Ricerca alpha-beta parallela Young Brothers Wait su un ForkJoinPool.
+ * <p>
+ * In ogni nodo abbastanza lontano dalle foglie il primo figlio (il fratello maggiore)
+ * viene cercato da solo; stabilito il suo valore, gli altri figli diventano task
+ * fork/join, ognuno con la propria copia della tavola. I fratelli condividono l'alpha
+ * del padre, che cresce man mano che finiscono, e quando uno di loro causa un taglio
+ * gli altri vengono annullati. Vicino alle foglie i sottoalberi vengono cercati in modo
+ * sequenziale dalla negamax di un Ronaldo aiutante, uno per thread.
+ * </p>
+ * <p>
+ * Tutti gli aiutanti usano la tabella delle trasposizioni del Ronaldo principale.
+ * </p>
+ */
+class RicercaYBW {
+
+    // Profondità residua sotto la quale un nodo viene cercato in modo sequenziale
+    static final int PROFONDITA_DIVISIONE = 3;
+
+    private final ForkJoinPool pool;
+    private final int N;
+    // Vero quando il tempo del Ronaldo principale sta per scadere
+    private final BooleanSupplier tempoScaduto;
+    // Aiutante di ogni thread, con la generazione della ricerca per cui è stato preparato
+    private final ThreadLocal<Aiutante> aiutante;
+    private final List<Aiutante> aiutanti = new CopyOnWriteArrayList<>();
+
+    // Ricerca corrente
+    private volatile TabellaTrasposizione tabella;
+    private volatile long inizio;
+    private volatile int generazione;
+
+    // Risultato dell'ultima chiamata a cerca
+    private boolean interrotta;
+    private int mossa = -1;
+
+    private static final class Aiutante {
+        final Ronaldo ronaldo;
+        int generazione = -1;
+
+        Aiutante(Ronaldo ronaldo) {
+            this.ronaldo = ronaldo;
+        }
+    }
+
+    /**
+     * @param thread       numero di thread del pool
+     * @param N            numero di colonne della tavola
+     * @param tempoScaduto vero quando la ricerca deve fermarsi
+     * @param creaAiutante crea il Ronaldo aiutante di un thread, già inizializzato per la partita
+     */
+    RicercaYBW(int thread, int N, BooleanSupplier tempoScaduto, Supplier<Ronaldo> creaAiutante) {
+        this.pool = new ForkJoinPool(thread);
+        this.N = N;
+        this.tempoScaduto = tempoScaduto;
+        this.aiutante = ThreadLocal.withInitial(() -> {
+            Aiutante a = new Aiutante(creaAiutante.get());
+            aiutanti.add(a);
+            return a;
+        });
+    }
+
+    // Segnala l'inizio della ricerca di una nuova mossa, con la tabella e il tempo iniziale (System.nanoTime) del principale
+    void nuovaRicerca(TabellaTrasposizione tabella, long inizio) {
+        this.tabella = tabella;
+        this.inizio = inizio;
+        generazione++;
+    }
+
+    /*
+     * Cerca la posizione B con profondità depthMax e finestra alpha-beta, dal punto di vista
+     * di Ronaldo. La mossa migliore è restituita da mossa(), interrotta() dice se il tempo è scaduto.
+     */
+    long cerca(CXBoard B, long current_eval, int depthMax, long alpha, long beta) {
+        Nodo radice = new Nodo(null, -1, B.copy(), current_eval, 0, depthMax, alpha, beta, 1);
+        long val = pool.invoke(radice);
+        interrotta = radice.interrotto;
+        mossa = radice.migliore;
+        return val;
+    }
+
+    boolean interrotta() {
+        return interrotta;
+    }
+
+    int mossa() {
+        return mossa;
+    }
+
+    // Nodi visitati nell'ultima mossa da ogni aiutante
+    String nodiPerThread() {
+        StringBuilder s = new StringBuilder();
+        for (Aiutante a : aiutanti) {
+            if (s.length() > 0) s.append(' ');
+            s.append(a.generazione == generazione ? a.ronaldo.nodi() : 0L);
+        }
+        return s.toString();
+    }
+
+    void chiudi() {
+        pool.shutdownNow();
+    }
+
+    // Aiutante del thread corrente, preparato per la ricerca corrente
+    private Ronaldo aiutante() {
+        Aiutante a = aiutante.get();
+        if (a.generazione != generazione) {
+            a.ronaldo.preparaAiutante(tabella.vista(), inizio);
+            a.generazione = generazione;
+        }
+        return a.ronaldo;
+    }
+
+    /*
+     * Un nodo della ricerca. Il valore restituito è dal punto di vista del giocatore che muove,
+     * come nella negamax di Ronaldo. Quando finisce riporta il proprio valore al padre.
+     * Il task non viene mai serializzato.
+     */
+    @SuppressWarnings("serial")
+    private final class Nodo extends RecursiveTask<Long> {
+        private final Nodo padre;
+        // Mossa che dal padre porta a questo nodo
+        private final int mossa;
+        private final CXBoard B;
+        private final long current_eval;
+        private final int depthCurrent, depthMax, colore;
+
+        // Finestra del nodo: alpha cresce con i valori dei figli
+        private long alpha, beta;
+        private long valore = -Ronaldo.INFINITO;
+        private int migliore = -1;
+        // Un figlio ha causato un taglio beta, gli altri figli vanno annullati
+        private volatile boolean taglio;
+        // La ricerca del nodo è stata fermata dal tempo o dall'annullamento
+        private boolean interrotto;
+
+        Nodo(Nodo padre, int mossa, CXBoard B, long current_eval, int depthCurrent, int depthMax,
+             long alpha, long beta, int colore) {
+            this.padre = padre;
+            this.mossa = mossa;
+            this.B = B;
+            this.current_eval = current_eval;
+            this.depthCurrent = depthCurrent;
+            this.depthMax = depthMax;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.colore = colore;
+        }
+
+        //Vero se un antenato ha già avuto un taglio; il tempo lo controlla anche l'aiutante
+        private boolean annullato() {
+            for (Nodo n = padre; n != null; n = n.padre)
+                if (n.taglio) return true;
+            return false;
+        }
+
+        //Riporta il valore v della mossa col di un figlio
+        private synchronized void aggiorna(long v, int col) {
+            if (v > valore) {
+                valore = v;
+                migliore = col;
+            }
+            alpha = Math.max(alpha, v);
+            if (beta <= alpha)
+                taglio = true;
+        }
+
+        private synchronized long alpha() {
+            return alpha;
+        }
+
+        private synchronized long valore() {
+            return valore;
+        }
+
+        @Override
+        protected Long compute() {
+            long val = cerca();
+            if (!interrotto && padre != null)
+                padre.aggiorna(-val, mossa);
+            return val;
+        }
+
+        private long cerca() {
+            if (tempoScaduto.getAsBoolean() || annullato()) {
+                interrotto = true;
+                return 0L;
+            }
+            //Il padre può aver alzato alpha dopo aver creato questo task
+            if (padre != null)
+                beta = Math.min(beta, -padre.alpha());
+
+            Ronaldo w = aiutante();
+            int profondita = depthMax - depthCurrent;
+            if (profondita < PROFONDITA_DIVISIONE) {
+                long val = w.cercaSottoalbero(B, current_eval, depthCurrent, depthMax, alpha, beta, colore, this::annullato);
+                interrotto = w.interrotta();
+                if (depthCurrent == 0) migliore = w.mossaRadice();
+                return val;
+            }
+
+            w.contaNodo();
+            if (B.gameState() != CXGameState.OPEN || B.numOfFreeCells() == 0)
+                return w.valutaPosizione(B, depthCurrent, colore);
+
+            //Cerco la posizione nella tabella delle trasposizioni, come nella negamax
+            TabellaTrasposizione tabella = w.tabella();
+            long chiave = B.hash();
+            long alphaIniziale = alpha, betaIniziale = beta;
+            int mossaTabella = -1;
+            if (tabella.cerca(chiave, depthCurrent)) {
+                mossaTabella = tabella.mossa();
+                if (depthCurrent > 0 && tabella.profondita() >= profondita) {
+                    long punteggio = tabella.punteggio();
+                    switch (tabella.limite()) {
+                        case TabellaTrasposizione.ESATTO:
+                            return punteggio;
+                        case TabellaTrasposizione.INFERIORE:
+                            alpha = Math.max(alpha, punteggio);
+                            break;
+                        case TabellaTrasposizione.SUPERIORE:
+                            beta = Math.min(beta, punteggio);
+                            break;
+                    }
+                    if (beta <= alpha)
+                        return punteggio;
+                }
+            }
+
+            //Mosse ordinate con la valutazione completa dei figli; i buffer sono del nodo
+            //perché un thread che attende i figli può eseguire altri nodi della stessa profondità
+            int[] L = new int[N];
+            long[] V = new long[N];
+            long[] P = new long[N];
+            int n = B.fillAvailableColumns(L);
+            for (int k = 0; k < n; k++) {
+                V[k] = w.valutaMossa(B, depthCurrent, current_eval, L[k]);
+                P[k] = colore * V[k];
+            }
+            Ronaldo.ordinaMosse(L, V, P, n, mossaTabella);
+
+            //Il fratello maggiore viene cercato da solo, sulla tavola di questo nodo
+            B.markColumn(L[0]);
+            Nodo primo = new Nodo(this, L[0], B, V[0], depthCurrent + 1, depthMax, -beta, -alpha, -colore);
+            primo.compute();
+            B.unmarkColumn();
+            if (primo.interrotto) {
+                interrotto = true;
+                return valore();
+            }
+
+            //I fratelli minori partono insieme, ognuno sulla propria copia della tavola
+            if (!taglio && n > 1) {
+                Nodo[] fratelli = new Nodo[n - 1];
+                long a = alpha();
+                for (int k = 1; k < n; k++) {
+                    CXBoard copia = B.copy();
+                    copia.markColumn(L[k]);
+                    fratelli[k - 1] = new Nodo(this, L[k], copia, V[k], depthCurrent + 1, depthMax, -beta, -a, -colore);
+                }
+                invokeAll(fratelli);
+                //I fratelli annullati dal taglio di questo nodo non contano
+                for (Nodo f : fratelli)
+                    if (f.interrotto && !taglio) interrotto = true;
+            }
+
+            long val = valore();
+            if (!interrotto)
+                aiutante().tabella().salva(chiave, depthCurrent, profondita,
+                        Ronaldo.limite(val, alphaIniziale, betaIniziale), val, migliore);
+            return val;
+        }
+    }
+}
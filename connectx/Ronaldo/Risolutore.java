@@ -0,0 +1,284 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Risolutore esatto delle posizioni di fine partita: stabilisce se chi muove vince,
+ * pareggia o perde con il gioco perfetto di entrambi e trova una mossa che lo ottiene.
+ * <p>
+ * È una negamax con finestra nulla attorno a vittoria, pareggio e sconfitta, senza
+ * valutazione euristica, sulle mosse e contromosse di CXBoard. Le minacce immediate
+ * potano l'albero: una mossa vincente chiude il nodo, due minacce avversarie sono una
+ * sconfitta, una minaccia avversaria forza la mossa e le colonne avvelenate (in cui
+ * l'avversario vincerebbe subito sopra) non si giocano. Le altre mosse sono ordinate per
+ * numero di minacce immediate che creano e poi per vicinanza al centro. La tabella delle
+ * trasposizioni è propria del risolutore e salva limiti sul valore.
+ * </p>
+ * <p>
+ * Il valore di un nodo è positivo se chi muove vince, zero se pareggia e negativo se perde;
+ * in valore assoluto non supera il numero di celle libere più uno, e una vittoria vale di più
+ * quanto prima arriva. La radice cerca solo il segno, che è molto più veloce.
+ * </p>
+ * <p>
+ * Uso da riga di comando, per giudicare una posizione: java -cp ".." connectx.Ronaldo.Risolutore M N X [colonne giocate]
+ * </p>
+ */
+public class Risolutore {
+
+    // Esiti della posizione per chi muove
+    public static final int VITTORIA = 1;
+    public static final int PAREGGIO = 0;
+    public static final int SCONFITTA = -1;
+
+    // Nodi tra due chiamate alla condizione di arresto, meno uno
+    private static final int CONTROLLO = 1023;
+
+    // Tabella delle trasposizioni: chiave e informazioni (valore più SPOSTAMENTO e tipo di limite,
+    // mai zero in una voce occupata), sostituzione sempre
+    private static final int SPOSTAMENTO = 1 << 28;
+    private final long[] chiavi;
+    private final long[] informazioni;
+    private final int maschera;
+
+    // Dimensioni della tavola per cui sono allocati i buffer, le chiavi dipendono da queste
+    private int M = -1, N = -1, X = -1;
+    private int parole;
+    // Buffer delle mosse, delle priorità e dei valori (non usati) per numero di pezzi sulla tavola
+    private int[][] colonne;
+    private long[][] priorita;
+    private long[][] valori;
+
+    private BooleanSupplier fermati;
+    private boolean interrotto;
+    private long nodi;
+
+    // Risultato dell'ultima chiamata a risolvi
+    private int mossa = -1;
+    private int esito;
+
+    /**
+     * Crea un risolutore la cui tabella delle trasposizioni occupa al più il numero di megabyte indicato.
+     *
+     * @param megabyte memoria massima della tabella, almeno 1
+     */
+    public Risolutore(int megabyte) {
+        int voci = Integer.highestOneBit((int) Math.min(Math.max(megabyte, 1) * (1L << 20) / 16, 1 << 30));
+        this.chiavi = new long[voci];
+        this.informazioni = new long[voci];
+        this.maschera = voci - 1;
+    }
+
+    /**
+     * Risolve la posizione B, che alla fine è la stessa dell'inizio.
+     *
+     * @return true se la posizione è risolta, con la mossa e l'esito restituiti da mossa() ed esito()
+     *
+     * @throws IllegalStateException se la partita in B è già finita
+     */
+    public boolean risolvi(CXBoard B) {
+        return risolvi(B, () -> false);
+    }
+
+    /**
+     * Risolve la posizione B, fermandosi quando fermati diventa vero.
+     *
+     * @param fermati condizione di arresto, controllata ogni mille nodi circa
+     *
+     * @return true se la posizione è risolta, false se la ricerca è stata fermata
+     *
+     * @throws IllegalStateException se la partita in B è già finita
+     */
+    public boolean risolvi(CXBoard B, BooleanSupplier fermati) {
+        if (B.gameState() != CXGameState.OPEN)
+            throw new IllegalStateException("Game ended!");
+        prepara(B);
+        this.fermati = fermati;
+        interrotto = false;
+        nodi = 0;
+
+        //Una mossa vincente risolve subito la posizione
+        for (int w = 0; w < parole; w++) {
+            long vincenti = B.winningColumnsMask(w);
+            if (vincenti != 0L) {
+                mossa = (w << 6) + Long.numberOfTrailingZeros(vincenti);
+                esito = VITTORIA;
+                return true;
+            }
+        }
+
+        //Alla radice provo tutte le mosse, anche quelle avvelenate, finché non ne trovo una vincente
+        int profondita = B.numOfMarkedCells();
+        int[] L = colonne[profondita];
+        int n = B.fillAvailableColumns(L);
+        ordina(B, L, n, profondita);
+        int migliore = Integer.MIN_VALUE;
+        for (int k = 0; k < n && migliore < 1; k++) {
+            B.markColumn(L[k]);
+            int v = B.gameState() == CXGameState.OPEN ? -negamax(B, -1, -Math.max(migliore, -1)) : 0;
+            B.unmarkColumn();
+            if (interrotto) return false;
+            if (v > migliore) {
+                migliore = v;
+                mossa = L[k];
+            }
+        }
+        esito = Integer.signum(migliore);
+        return true;
+    }
+
+    public int mossa() {
+        return mossa;
+    }
+
+    public int esito() {
+        return esito;
+    }
+
+    public long nodi() {
+        return nodi;
+    }
+
+    // Alloca i buffer per le dimensioni di B e svuota la tabella se le dimensioni sono cambiate
+    private void prepara(CXBoard B) {
+        if (B.M == M && B.N == N && B.X == X) return;
+        M = B.M;
+        N = B.N;
+        X = B.X;
+        parole = (N + 63) >>> 6;
+        colonne = new int[M * N + 1][N];
+        priorita = new long[M * N + 1][N];
+        valori = new long[M * N + 1][N];
+        Arrays.fill(chiavi, 0L);
+        Arrays.fill(informazioni, 0L);
+    }
+
+    /*
+     * Negamax sulla posizione aperta B, in cui nessuna mossa precedente ha vinto.
+     * Il valore è dal punto di vista di chi muove, con finestra alpha-beta.
+     */
+    private int negamax(CXBoard B, int alpha, int beta) {
+        if ((++nodi & CONTROLLO) == 0 && fermati.getAsBoolean())
+            interrotto = true;
+        if (interrotto) return 0;
+
+        int F = B.numOfFreeCells();
+        //Vinco subito: più celle restano libere, più la vittoria vale
+        for (int w = 0; w < parole; w++)
+            if (B.winningColumnsMask(w) != 0L) return F;
+        //L'ultima cella non vince, la partita è pari
+        if (F <= 1) return 0;
+
+        //Minacce dell'avversario: con due non posso pararle entrambe, con una devo pararla
+        int minacce = 0, forzata = -1;
+        for (int w = 0; w < parole; w++) {
+            long b = B.blockingColumnsMask(w);
+            if (b != 0L) {
+                minacce += Long.bitCount(b);
+                forzata = (w << 6) + Long.numberOfTrailingZeros(b);
+            }
+        }
+        if (minacce >= 2) return -(F - 1);
+
+        //Al più vinco alla mia prossima mossa
+        int massimo = F - 2;
+        if (beta > massimo) {
+            beta = massimo;
+            if (alpha >= beta) return beta;
+        }
+
+        long chiave = B.hash();
+        int indice = (int) chiave & maschera;
+        int alphaIniziale = alpha, betaIniziale = beta;
+        if (chiavi[indice] == chiave && informazioni[indice] != 0L) {
+            long info = informazioni[indice];
+            int v = (int) (info >>> 2) - SPOSTAMENTO;
+            switch ((int) info & 0x3) {
+                case TabellaTrasposizione.ESATTO:
+                    return v;
+                case TabellaTrasposizione.INFERIORE:
+                    alpha = Math.max(alpha, v);
+                    break;
+                case TabellaTrasposizione.SUPERIORE:
+                    beta = Math.min(beta, v);
+                    break;
+            }
+            if (alpha >= beta) return v;
+        }
+
+        //Mosse candidate: quella forzata o quelle non avvelenate
+        int profondita = B.numOfMarkedCells();
+        int[] L = colonne[profondita];
+        int n = 0;
+        for (int w = 0; w < parole; w++) {
+            long candidate = forzata >= 0
+                    ? (forzata >>> 6 == w ? 1L << (forzata & 63) : 0L)
+                    : B.availableColumnsMask(w);
+            candidate &= ~B.poisonedColumnsMask(w);
+            for (; candidate != 0L; candidate &= candidate - 1)
+                L[n++] = (w << 6) + Long.numberOfTrailingZeros(candidate);
+        }
+        //Ogni mossa possibile lascia vincere l'avversario subito
+        if (n == 0) return -(F - 1);
+        ordina(B, L, n, profondita);
+
+        int migliore = Integer.MIN_VALUE;
+        for (int k = 0; k < n; k++) {
+            B.markColumn(L[k]);
+            int v = -negamax(B, -beta, -alpha);
+            B.unmarkColumn();
+            if (interrotto) return 0;
+            if (v > migliore) {
+                migliore = v;
+                if (v > alpha) alpha = v;
+                if (alpha >= beta) break;
+            }
+        }
+
+        chiavi[indice] = chiave;
+        informazioni[indice] = (long) (migliore + SPOSTAMENTO) << 2 | Ronaldo.limite(migliore, alphaIniziale, betaIniziale);
+        return migliore;
+    }
+
+    // Ordina le n mosse di L per minacce immediate create e poi per vicinanza al centro
+    private void ordina(CXBoard B, int[] L, int n, int profondita) {
+        long[] P = priorita[profondita];
+        for (int k = 0; k < n; k++) {
+            int c = L[k];
+            B.markColumn(c);
+            //Dopo la mossa muove l'avversario: le mie minacce sono le colonne che deve bloccare
+            int minacce = 0;
+            if (B.gameState() == CXGameState.OPEN)
+                for (int w = 0; w < parole; w++)
+                    minacce += Long.bitCount(B.blockingColumnsMask(w));
+            B.unmarkColumn();
+            P[k] = (long) minacce << 32 | (N - Math.abs(2 * c - (N - 1)));
+        }
+        Ronaldo.ordinaMosse(L, valori[profondita], P, n, -1);
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Uso: java -cp \"..\" connectx.Ronaldo.Risolutore M N X [colonne giocate]");
+            System.exit(1);
+        }
+        CXBoard B = new CXBoard(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        for (int i = 3; i < args.length; i++)
+            B.markColumn(Integer.parseInt(args[i]));
+        if (B.gameState() != CXGameState.OPEN) {
+            System.out.println("Partita finita: " + B.gameState());
+            return;
+        }
+
+        Risolutore r = new Risolutore(64);
+        long inizio = System.nanoTime();
+        r.risolvi(B);
+        String[] esiti = {"sconfitta", "pareggio", "vittoria"};
+        System.out.println("Esito per il giocatore " + (B.currentPlayer() + 1) + ": " + esiti[r.esito() + 1]
+                + ", mossa " + r.mossa() + ", nodi " + r.nodi()
+                + ", " + (System.nanoTime() - inizio) / 1_000_000 + " ms");
+    }
+}
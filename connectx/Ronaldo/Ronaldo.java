@@ -19,9 +19,14 @@
 package connectx.Ronaldo;
 
 import connectx.*;
-import connectx.Ronaldo.Coppia;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 
 
 /**
@@ -33,13 +38,13 @@ import java.util.*;
  */
 public class Ronaldo implements CXPlayer {
 
-    //Limite di tempo (secondi)
-    private int  TIMEOUT;
-    //Tempo iniziale (millisecondi)
-    private long START;
+    //Tempo della mossa: inizio, limiti e previsione della durata delle iterazioni
+    private GestoreTempo tempo;
 
     // Numero di righe (M), colonne (N) e pezzi da allineare per vincere (K)
     private int M, N, K;
+    // Parole delle maschere delle colonne di CXBoard
+    private int parole;
 
     // Stati del gioco che rappresentano la vittoria di questo giocatore e la vittoria dell'avversario
     private CXGameState vittoriaRonaldo;
@@ -47,35 +52,157 @@ public class Ronaldo implements CXPlayer {
 
     // Stato della cella rappresentanti il pezzo di questo giocatore
     private CXCellState cellaRonaldo;
+    // Lo stesso stato codificato come in CXBoard.cell (ordinale di CXCellState)
+    private byte mio;
     // Colonna della mossa migliore
     private int mossaMigliore;
+    // Punteggio della radice nell'ultima iterazione completata
+    private long punteggioRadice;
     // Flag che indica se il tempo è scaduto
     private boolean tempoScaduto = false;
 
 
-    // Array che contiene le valutazioni delle colonne, righe e diagonali
-    private long[] lastColumnEvaluations;
-    private long[] lastRowEvaluations;
-    private long[] lastAscDiagEvaluations;
-    private long[] lastDescDiagEvaluations;
+    // Valutazione incrementale della tavola su cui si sta cercando
+    private Valutatore valutatore;
+
+    // Buffer delle colonne disponibili, uno per livello della ricerca (niente boxing né allocazioni)
+    private int[][] colonne;
+    // Buffer delle valutazioni delle colonne e delle priorità per l'ordinamento, paralleli a quelli delle colonne
+    private long[][] valori;
+    private long[][] priorita;
+
+    // Profondità residua da cui in su le mosse vengono ordinate con la valutazione completa dei figli,
+    // più in basso con le euristiche killer, history e centro
+    private static final int PROFONDITA_VALUTAZIONE = 3;
+    // Mosse forzate (parate di una minaccia) oltre l'orizzonte prima di valutare una foglia
+    private static final int ESTENSIONI_MINACCE = 4;
+    // Due mosse killer per profondità: le ultime mosse che hanno causato un taglio beta
+    private int[][] killer;
+    // History per [giocatore][cella]: quanto spesso la mossa ha causato un taglio beta
+    private long[][] history;
+
+    // Limiti della finestra alpha-beta, simmetrici per la negamax
+    static final long INFINITO = Long.MAX_VALUE - 1;
+    // Punteggi oltre questa soglia sono vittorie o sconfitte
+    static final long SOGLIA_VITTORIA = Long.MAX_VALUE / 2;
+    // Ampiezza iniziale della finestra di aspirazione, proporzionale al valore di una sequenza di K
+    private long finestraAspirazione;
+
+    // Memoria predefinita della tabella delle trasposizioni (megabyte)
+    public static final int MEGABYTE_TABELLA = 32;
+
+    // Tabella delle trasposizioni, conservata tra le iterazioni e tra le mosse della partita
+    private TabellaTrasposizione tabella;
+    private final int megabyteTabella;
+
+    // Numero di thread della ricerca: con più di un thread Ronaldo usa la Lazy SMP, in cui
+    // thread aiutanti ripetono la stessa ricerca su copie della tavola condividendo la tabella
+    private final int thread;
+    // Ronaldo aiutanti, uno per thread oltre a quello principale, e loro esecutore
+    private Ronaldo[] aiutanti;
+    private Future<?>[] ricercheAiutanti;
+    private ExecutorService esecutore;
+    // Vero per gli aiutanti, che non stampano nulla e non hanno una tabella propria
+    private final boolean aiutante;
+    // Segnala a un aiutante di fermarsi perchè il thread principale ha finito
+    private volatile boolean fermato;
+    // Nodi visitati nella ricerca dell'ultima mossa
+    private long nodi;
+
+    // Con ybw i thread non usano la Lazy SMP ma dividono l'albero con la Young Brothers Wait
+    private final boolean ybw;
+    private RicercaYBW ricercaYBW;
+    // Negli aiutanti della YBW segnala che il sottoalbero cercato non serve più
+    private BooleanSupplier annullata;
+
+    // Con ponder Ronaldo continua a cercare durante il turno dell'avversario, sulla posizione
+    // dopo la sua risposta prevista. Il pensatore è un aiutante su un thread a priorità minima,
+    // ma la JVM su Linux di norma ignora le priorità, quindi per non togliere processore
+    // all'avversario (che in CXPlayerTester gira nella stessa JVM) il pensatore parte solo se
+    // ci sono processori liberi oltre ai thread di ricerca dei due giocatori, e anche allora
+    // lavora al più metà del tempo: dopo ogni LAVORO_PONDER di ricerca dorme altrettanto
+    private final boolean ponder;
+    private static final long LAVORO_PONDER = 2_000_000L;
+    // Chiamate a timeIsRunningOut tra due controlli del tempo di lavoro del pensatore, meno uno
+    private static final int CONTROLLO_PONDER = 255;
+    // Vero per il pensatore, con l'inizio del lavoro dopo l'ultima pausa e le chiamate dall'ultimo controllo
+    private boolean riposo;
+    private long inizioLavoro;
+    private int chiamate;
+    private Ronaldo pensatore;
+    private ExecutorService esecutorePonder;
+    private Future<?> ricercaPonder;
+    // Chiave della posizione su cui pensa il pensatore
+    private long chiavePonder;
+
+    // Con mtdf ogni iterazione cerca il valore della radice con MTD(f), una serie di ricerche a finestra
+    // nulla che convergono sul valore, invece che con la finestra di aspirazione attorno al valore previsto
+    private final boolean mtdf;
+
+    // Profondità massima dell'iterative deepening, oltre al numero di celle libere (per i confronti di ConfrontaRadici)
+    private int profonditaMassima = Integer.MAX_VALUE;
+
+    // Libro delle aperture per questa tavola, dalla cartella indicata dalla proprietà di sistema ronaldo.libro
+    private LibroAperture libro;
+
+    // Con al più questo numero di celle libere la posizione viene prima risolta esattamente
+    // (proprietà di sistema ronaldo.risolutore, 0 per non usare il risolutore)
+    private static final int CELLE_RISOLUTORE = 20;
+    private static final int MEGABYTE_RISOLUTORE = 16;
+    private int celleRisolutore;
+    // Risolutore esatto, creato al primo utilizzo e conservato tra le mosse della partita
+    private Risolutore risolutore;
 
-    // Dimensioni dell'array delle diagonali
-    private int Rdiag;
-    private int Cdiag;
-    private int DiagNum;
+    /* Default empty constructor */
+    public Ronaldo() {
+        //La memoria della tabella delle trasposizioni (megabyte) si configura con la proprietà di sistema
+        //ronaldo.tabella, il numero di thread con ronaldo.thread, il tipo di ricerca parallela con
+        //ronaldo.parallelo (smp o ybw), il ponder con ronaldo.ponder e la ricerca della radice con
+        //ronaldo.radice (aspirazione o mtdf)
+        this(Integer.getInteger("ronaldo.tabella", MEGABYTE_TABELLA), Integer.getInteger("ronaldo.thread", 1),
+                "ybw".equalsIgnoreCase(System.getProperty("ronaldo.parallelo", "smp")),
+                Boolean.getBoolean("ronaldo.ponder"),
+                "mtdf".equalsIgnoreCase(System.getProperty("ronaldo.radice", "aspirazione")));
+    }
 
-    // Distanza tra la prima riga e la prima diagonale ascendente
-    private int HM;
+    /* Costruttore con la memoria della tabella delle trasposizioni in megabyte */
+    public Ronaldo(int megabyteTabella) {
+        this(megabyteTabella, 1);
+    }
 
-    // Ultima valutazione della tavola
-    private long lastEvaluation = 0L;
+    /* Costruttore con la memoria della tabella delle trasposizioni in megabyte e il numero di thread */
+    public Ronaldo(int megabyteTabella, int thread) {
+        this(megabyteTabella, thread, false);
+    }
 
-    // Ultima colonna e riga in cui è stata effettuata una mossa da Ronaldo
-    private int lastColumn = -1;
-    private int lastRow = -1;
+    /* Costruttore con memoria della tabella, numero di thread e ricerca parallela YBW invece della Lazy SMP */
+    public Ronaldo(int megabyteTabella, int thread, boolean ybw) {
+        this(megabyteTabella, thread, ybw, false);
+    }
 
-    /* Default empty constructor */
-    public Ronaldo() {
+    /* Costruttore con memoria della tabella, numero di thread, ricerca YBW e ponder (vedi il campo ponder) */
+    public Ronaldo(int megabyteTabella, int thread, boolean ybw, boolean ponder) {
+        this(megabyteTabella, thread, ybw, ponder, false);
+    }
+
+    /* Costruttore completo: memoria della tabella, numero di thread, ricerca YBW, ponder e MTD(f) alla radice */
+    public Ronaldo(int megabyteTabella, int thread, boolean ybw, boolean ponder, boolean mtdf) {
+        this.megabyteTabella = megabyteTabella;
+        this.thread = Math.max(thread, 1);
+        this.aiutante = false;
+        this.ybw = ybw;
+        this.ponder = ponder;
+        this.mtdf = mtdf;
+    }
+
+    /* Costruttore degli aiutanti della Lazy SMP e della YBW, che cercano la radice come il principale */
+    private Ronaldo(boolean aiutante, boolean mtdf) {
+        this.megabyteTabella = 0;
+        this.thread = 1;
+        this.aiutante = aiutante;
+        this.ybw = false;
+        this.ponder = false;
+        this.mtdf = mtdf;
     }
 
     public void initPlayer(int M, int N, int K, boolean first, int timeout_in_secs) {
@@ -84,28 +211,14 @@ public class Ronaldo implements CXPlayer {
         this.M = M;
         this.N = N;
         this.K = K;
+        this.parole = (N + 63) >>> 6;
 
-        //Calcolo il numero di righe e colonne dei generatori di diagonali
-        //Spiegazione: numero di righe e di colonne togliendo quelle da cui non possono partire diagonali lunghe K
-        this.Rdiag = M - (K - 1);
-        this.Cdiag = N - (K - 1);
-        //Calcolo la dimensione del rettangolo di diagonali generatrici e ottengo la lunghezza dell'array di queste
-        this.DiagNum = Rdiag * Cdiag;
-        //Distanza tra la prima riga e la prima riga di diagonali ascendenti generatrici
-        this.HM = (M - Rdiag);
-
-        //Inizializzo gli array di valutazione
-        this.subdiag_array = new CXCellState[K]; // Array that contains a diagonal of cells
-        this.col_array = new CXCellState[M]; // Array that contains a column of cells
-        this.row_array = new CXCellState[N]; // Array that contains a row of cells
-
-
-        // Inizializzo gli array di cache di valutazione
-        lastColumnEvaluations = new long[N];
-        lastRowEvaluations = new long[M];
-        lastAscDiagEvaluations = new long[this.DiagNum];
-        lastDescDiagEvaluations = new long[this.DiagNum];
-
+        // Inizializzo i buffer delle colonne, quelli della ricerca vengono allocati al primo utilizzo
+        colonne = new int[M * N + 1][];
+        valori = new long[M * N + 1][];
+        priorita = new long[M * N + 1][];
+        killer = new int[M * N + 1][2];
+        history = new long[2][M * N];
 
         // Setto gli stati di vittoria e lo stato della cella rappresentante il pezzo di questo giocatore
         // in base al fatto che gioco per primo o per secondo
@@ -118,9 +231,77 @@ public class Ronaldo implements CXPlayer {
             this.vittoriaAvversario = CXGameState.WINP1;
             this.cellaRonaldo = CXCellState.P2;
         }
+        this.mio = (byte) cellaRonaldo.ordinal();
+        this.valutatore = Valutatore.crea(M, N, K, mio);
 
         // Setto il timeout
-        this.TIMEOUT = timeout_in_secs;
+        this.tempo = new GestoreTempo(timeout_in_secs);
+
+        // Una sottosequenza con K-1 pezzi vale circa (K-1) * 2^(K-1)
+        this.finestraAspirazione = 1L << Math.min(K, 30);
+
+        // Una nuova tabella delle trasposizioni per ogni partita, gli aiutanti usano quella del principale
+        if (aiutante) return;
+        this.tabella = new TabellaTrasposizione(megabyteTabella);
+
+        // Gli aiutanti della Lazy SMP girano su thread daemon, così non impediscono la chiusura del programma
+        if (esecutore != null) esecutore.shutdownNow();
+        if (ricercaYBW != null) ricercaYBW.chiudi();
+        aiutanti = null;
+        ricercaYBW = null;
+        if (thread > 1 && ybw) {
+            //Nella YBW ogni thread del pool crea il proprio aiutante al primo utilizzo
+            ricercaYBW = new RicercaYBW(thread, N, () -> fermato || tempo.scadutoOra(), () -> {
+                Ronaldo a = new Ronaldo(true, mtdf);
+                a.initPlayer(M, N, K, first, timeout_in_secs);
+                return a;
+            });
+        } else if (thread > 1) {
+            aiutanti = new Ronaldo[thread - 1];
+            ricercheAiutanti = new Future<?>[thread - 1];
+            for (int h = 0; h < aiutanti.length; h++) {
+                aiutanti[h] = new Ronaldo(true, mtdf);
+                aiutanti[h].initPlayer(M, N, K, first, timeout_in_secs);
+            }
+            esecutore = Executors.newFixedThreadPool(thread - 1, r -> {
+                Thread t = new Thread(r, "Ronaldo aiutante");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        celleRisolutore = Integer.getInteger("ronaldo.risolutore", CELLE_RISOLUTORE);
+
+        //Il libro viene solo mappato in memoria, le sue pagine si caricano quando servono
+        libro = null;
+        String cartellaLibro = System.getProperty("ronaldo.libro");
+        if (cartellaLibro != null) {
+            try {
+                libro = LibroAperture.apri(Paths.get(cartellaLibro, LibroAperture.nomeFile(M, N, K)), M, N, K);
+            } catch (IOException e) {
+                System.out.println("Libro delle aperture non disponibile: " + e.getMessage());
+            }
+        }
+
+        //Il ponder della partita precedente si ferma. Quello nuovo parte solo con un processore libero
+        //oltre ai thread di Ronaldo e a quello dell'avversario (vedi il campo ponder)
+        if (esecutorePonder != null) esecutorePonder.shutdownNow();
+        if (pensatore != null) pensatore.fermato = true;
+        pensatore = null;
+        ricercaPonder = null;
+        if (ponder && Runtime.getRuntime().availableProcessors() < thread + 2)
+            System.out.println("Ponder disattivato: servono almeno " + (thread + 2) + " processori");
+        else if (ponder) {
+            pensatore = new Ronaldo(true, mtdf);
+            pensatore.initPlayer(M, N, K, first, timeout_in_secs);
+            pensatore.riposo = true;
+            esecutorePonder = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "Ronaldo ponder");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+        }
     }
 
 
@@ -131,606 +312,659 @@ public class Ronaldo implements CXPlayer {
      * trovare la mossa migliore da effettuare.
      */
     public int selectColumn(CXBoard board) {
-        tempoScaduto = false;
         //Salvo il tempo iniziale
-        START = System.currentTimeMillis();
+        tempo.inizia(System.nanoTime());
+        //Le posizioni salvate nelle mosse precedenti si possono sostituire, tranne quelle del ponder
+        //se l'avversario ha giocato la risposta prevista: la ricerca riparte da quel lavoro
+        if (!fermaPonder(board))
+            tabella.nuovaRicerca();
+        preparaRicerca();
+
+        //Le posizioni del libro delle aperture non richiedono ricerca
+        if (libro != null && libro.cerca(board) && board.freeRow(libro.mossa()) >= 0) {
+            mossaMigliore = libro.mossa();
+            punteggioRadice = libro.punteggio();
+            System.out.println("Mossa dal libro delle aperture: " + mossaMigliore);
+            return mossaMigliore;
+        }
+
+        //Con poche celle libere provo a risolvere la posizione in una piccola parte del tempo. Se è persa
+        //o il risolutore non finisce lascio scegliere alla ricerca euristica, che cerca la sconfitta più lontana
+        if (board.numOfFreeCells() <= celleRisolutore) {
+            if (risolutore == null) risolutore = new Risolutore(MEGABYTE_RISOLUTORE);
+            if (risolutore.risolvi(board, tempo::oltreRisolutore) && risolutore.esito() != Risolutore.SCONFITTA) {
+                mossaMigliore = risolutore.mossa();
+                punteggioRadice = risolutore.esito() == Risolutore.VITTORIA ? SOGLIA_VITTORIA + 1 : 0L;
+                System.out.println("Risolutore: " + (risolutore.esito() == Risolutore.VITTORIA ? "vittoria" : "pareggio")
+                        + ", nodi " + risolutore.nodi());
+                return mossaMigliore;
+            }
+        }
 
         // La miglior mossa iniziale è in mezzo alla griglia
+        punteggioRadice = 0L;
         if (board.numOfMarkedCells() == 0) return N / 2;
 
 
-        //Setto a true per utilizzaere una valutazione velocizzata
-        isStartingEvaluation = true;
-        // Valutazione corrente
-        long currentEval = evaluate(board, 0);
-        // Salvo la valutazione corrente
-        lastEvaluation = currentEval;
-        isStartingEvaluation = false;
+        //Gli aiutanti cercano in parallelo sulla stessa tabella, finché il thread principale non ha finito
+        avviaAiutanti(board);
+        iterativeDeepening(board, 0);
+        fermaAiutanti();
 
-        //Setto i valori di alpha e beta a min e max perchè non ho ancora valutato nessuna mossa
-        long alpha = Long.MIN_VALUE + 1;
-        long beta = Long.MAX_VALUE - 1;
+        //Durante il turno dell'avversario penso sulla sua risposta prevista
+        avviaPonder(board, mossaMigliore);
+
+        //Restituisco la mossa migliore
+        return this.mossaMigliore;
+    }
+
+    //Azzera lo stato della ricerca: le killer valgono per la posizione corrente, la history delle mosse precedenti pesa la metà
+    private void preparaRicerca() {
+        tempoScaduto = false;
+        nodi = 0;
+        for (int[] k : killer) k[0] = k[1] = -1;
+        for (long[] h : history)
+            for (int c = 0; c < h.length; c++) h[c] >>= 1;
+    }
+
+    //Fa partire ogni aiutante su una propria copia della tavola, metà di loro una profondità più avanti
+    private void avviaAiutanti(CXBoard board) {
+        if (ricercaYBW != null) ricercaYBW.nuovaRicerca(tabella, tempo.inizio());
+        if (aiutanti == null) return;
+        for (int h = 0; h < aiutanti.length; h++) {
+            Ronaldo a = aiutanti[h];
+            CXBoard copia = board.copy();
+            int primaProfondita = 1 + h % 2;
+            a.tempo.inizia(tempo.inizio());
+            a.tabella = tabella.vista();
+            a.fermato = false;
+            ricercheAiutanti[h] = esecutore.submit(() -> {
+                a.preparaRicerca();
+                a.iterativeDeepening(copia, primaProfondita);
+            });
+        }
+    }
+
+    //Ferma gli aiutanti, ne attende la fine e riporta i nodi visitati da ogni thread
+    private void fermaAiutanti() {
+        if (ricercaYBW != null) System.out.println("Nodi per thread: " + ricercaYBW.nodiPerThread());
+        if (aiutanti == null) return;
+        StringBuilder nodiPerThread = new StringBuilder("Nodi per thread: ").append(nodi);
+        for (int h = 0; h < aiutanti.length; h++) {
+            aiutanti[h].fermato = true;
+            try {
+                ricercheAiutanti[h].get();
+            } catch (Exception e) {
+                //Un aiutante interrotto o fallito non cambia la mossa del thread principale
+            }
+            nodiPerThread.append(' ').append(aiutanti[h].nodi);
+        }
+        System.out.println(nodiPerThread);
+    }
+
+    /*
+     * Fa partire il pensatore sulla posizione dopo la mossa scelta e la risposta prevista
+     * dell'avversario, la seconda mossa della variante principale salvata nella tabella.
+     * Il pensatore si ferma al prossimo selectColumn o al più dopo il tempo di una mossa.
+     */
+    private void avviaPonder(CXBoard board, int mossa) {
+        if (pensatore == null) return;
+        CXBoard copia = board.copy();
+        copia.markColumn(mossa);
+        if (copia.gameState() != CXGameState.OPEN || !tabella.cerca(copia.hash(), 1)) return;
+        int risposta = tabella.mossa();
+        if (risposta < 0 || copia.freeRow(risposta) < 0) return;
+        copia.markColumn(risposta);
+        if (copia.gameState() != CXGameState.OPEN) return;
+
+        //Il lavoro del ponder ha una nuova età, che resta quella della prossima mossa se la previsione è giusta
+        tabella.nuovaRicerca();
+        chiavePonder = copia.hash();
+        Ronaldo p = pensatore;
+        p.tempo.inizia(System.nanoTime());
+        p.tabella = tabella.vista();
+        p.fermato = false;
+        ricercaPonder = esecutorePonder.submit(() -> {
+            p.inizioLavoro = System.nanoTime();
+            p.preparaRicerca();
+            p.iterativeDeepening(copia, 1);
+        });
+    }
+
+    //Ferma il pensatore e ne attende la fine; restituisce true se la posizione è quella su cui pensava
+    private boolean fermaPonder(CXBoard board) {
+        if (ricercaPonder == null) return false;
+        pensatore.fermato = true;
+        try {
+            ricercaPonder.get();
+        } catch (Exception e) {
+            //Un ponder interrotto o fallito lascia nella tabella solo risultati completi
+        }
+        ricercaPonder = null;
+        boolean prevista = board.hash() == chiavePonder;
+        System.out.println("Ponder: risposta " + (prevista ? "prevista" : "non prevista") + ", nodi " + pensatore.nodi);
+        return prevista;
+    }
+
+    //Iterative deepening a partire da primaProfondita, fino allo scadere del tempo, alla fine della partita
+    //o a un risultato dimostrato
+    private void iterativeDeepening(CXBoard board, int primaProfondita) {
         //Variabile che salva la mossa migliore trovata fino ad ora
         int prev;
-        int profonditaCorrente = 0;
+        int profonditaCorrente = primaProfondita;
 
         this.mossaMigliore = -1;
 
-        //ricerca in profondità
-        int maxDepth = 8;
+        //La ricerca non può andare oltre l'ultima cella libera
+        int maxDepth = Math.min(board.numOfFreeCells(), profonditaMassima);
 
-        long bestEval = 0L;
+        //Punteggio dell'ultima iterazione completata, centro della finestra di aspirazione
+        //o primo tentativo della MTD(f) della successiva
+        valutatore.collega(board);
+        long punteggio = valutatore.punteggio();
         long lastEval = 0L;
 
-        //Finchè non scade il tempo e non raggiungo la profondità massima continuo a cercare aumentando la profondità
+        //Finchè non scade il tempo e non raggiungo la profondità massima continuo a cercare aumentando la profondità.
+        //Il thread principale non inizia un'iterazione che non farebbe in tempo a finire, se ha già una mossa
         while(!tempoScaduto && profonditaCorrente <= maxDepth) {
+            if (!aiutante && mossaMigliore != -1 && !tempo.puoIniziareIterazione()) {
+                System.out.println("Nessuna nuova iterazione, profondità raggiunta: " + (profonditaCorrente - 1));
+                break;
+            }
+            tempo.inizioIterazione();
             //Salvo la mossa migliore trovata fino ad ora
             prev = this.mossaMigliore;
             //Eseguo la ricerca in profondità con la profondità corrente
-            lastEval = minimax(board, currentEval, 0, profonditaCorrente, alpha, beta, true);
+            lastEval = mtdf ? mtdf(board, profonditaCorrente, punteggio) : aspirazione(board, profonditaCorrente, punteggio);
             //Se il tempo è scaduto non ho potuto stabilire una mossa migliore affidabile con profondità = d, quindi uso quella precedente
             if(tempoScaduto) {
-                System.out.println("Tempo scaduto, profondità raggiunta: " + profonditaCorrente);
+                if (!aiutante)
+                    System.out.println("Tempo scaduto, profondità raggiunta: " + profonditaCorrente);
                 this.mossaMigliore = prev;
-            }
-
-            if (lastEval > bestEval) {
-                bestEval = lastEval;
+            } else {
+                punteggio = lastEval;
+                punteggioRadice = lastEval;
+                tempo.fineIterazione();
+                //Un punteggio di vittoria o sconfitta viene solo da posizioni terminali o da minacce
+                //forzate: il risultato è dimostrato e una ricerca più profonda non lo cambierebbe.
+                //Alla profondità 0 però la radice è una foglia e non ha ancora una mossa
+                if (Math.abs(lastEval) > SOGLIA_VITTORIA && mossaMigliore != -1) {
+                    if (!aiutante)
+                        System.out.println("Risultato dimostrato a profondità " + profonditaCorrente + ": "
+                                + (lastEval > 0 ? "vittoria" : "sconfitta"));
+                    break;
+                }
             }
 
             // Incremento la profondità
             profonditaCorrente++;
         }
-
-        //Salvo la mossa scelta
-        lastColumn = mossaMigliore;
-
-        //Ottengo la riga della mossa
-        for(int i = M-1; i >= 0; i--) {
-            if(board.cellState(i, mossaMigliore) == CXCellState.FREE) {
-                //Salvo la riga della mossa
-                lastRow = i;
-                break;
-            }
-        }
-
-        //Restituisco la mossa migliore
-        return this.mossaMigliore;
-    }
-
-
-    // Utility per convertire i millisecondi in secondi
-    private long millisToSec(long millis) {
-        return millis / 1000;
     }
 
 
-    //Utility per controllare se il tempo è scaduto
+    //Utility per controllare se il tempo è scaduto (vedi GestoreTempo, che non legge l'orologio a ogni nodo)
     private boolean timeIsRunningOut() {
-        // Tempo corrente - tempo iniziale >= 95% del timeout
-        //95% perchè voglio un po di margine per stoppare il programma e scegliere la mossa migliore fin ora
-        return (millisToSec(System.currentTimeMillis() - START) >= TIMEOUT * (95.0 / 100.0));
+        if (riposo && (++chiamate & CONTROLLO_PONDER) == 0) riposa();
+        //Un aiutante si ferma anche quando il thread principale ha finito
+        //o, nella YBW, quando il suo sottoalbero è stato annullato
+        return fermato || (annullata != null && annullata.getAsBoolean()) || tempo.scaduto();
     }
 
 
-    private long minimax(CXBoard B, long current_eval, int depthCurrent, int depthMax, long alpha, long beta, boolean maximizing) {
-
-        //Situazione terminale, si è raggiunta una foglia dell'albero di ricerca o si è raggiunta la profondità massima
-        if (depthCurrent == depthMax || B.gameState() != CXGameState.OPEN || B.numOfFreeCells() == 0)
-            return evaluate(B, depthCurrent);
+    //Il pensatore dorme quanto ha lavorato dall'ultima pausa, se ha lavorato almeno LAVORO_PONDER
+    private void riposa() {
+        long lavoro = System.nanoTime() - inizioLavoro;
+        if (lavoro < LAVORO_PONDER) return;
+        LockSupport.parkNanos(lavoro);
+        inizioLavoro = System.nanoTime();
+    }
 
-        // Massimizzo il mio punteggio
-        if (maximizing) {
-            // Inizializzo il valore della mossa migliore a min
-            long val = Long.MIN_VALUE + 1;
-            Integer[] L = B.getAvailableColumns();
-            //Array di coppie (mossa, valore) che verranno ordinati in ordine decrescente
-            List<Coppia<Integer, Long>> orderedMoves = new ArrayList<>();
+    /*
+     * Ricerca con finestra di aspirazione: cerca con una finestra stretta attorno al punteggio
+     * previsto (quello dell'iterazione precedente) e la allarga dal lato in cui fallisce.
+     */
+    private long aspirazione(CXBoard B, int depthMax, long previsto) {
+        //Alle prime profondità e con punteggi di vittoria o sconfitta cerco con la finestra piena
+        if (depthMax < 2 || Math.abs(previsto) > SOGLIA_VITTORIA)
+            return cercaRadice(B, depthMax, -INFINITO, INFINITO);
+
+        long delta = finestraAspirazione;
+        long alpha = previsto - delta;
+        long beta = previsto + delta;
+        while (true) {
+            long val = cercaRadice(B, depthMax, alpha, beta);
+            if (tempoScaduto || (alpha < val && val < beta))
+                return val;
+
+            //Allargo la finestra dal lato in cui la ricerca è fallita, oltre una certa ampiezza
+            //o se il punteggio è una vittoria o una sconfitta la apro del tutto
+            delta *= 4;
+            boolean apri = delta > SOGLIA_VITTORIA / 2 || Math.abs(val) > SOGLIA_VITTORIA;
+            if (val <= alpha)
+                alpha = apri ? -INFINITO : previsto - delta;
+            else
+                beta = apri ? INFINITO : previsto + delta;
+        }
+    }
 
-            //Qui vengono calcolati i valori delle mosse disponibili
-            for (int i : L) {
-                long childHeuristic = update_evaluate(B, depthCurrent, current_eval, i);
-                orderedMoves.add(new Coppia<>(i, childHeuristic));
+    /*
+     * MTD(f): ricerche a finestra nulla attorno al tentativo g, che parte dal punteggio previsto.
+     * Ognuna dice se il valore è almeno beta e, dato che la negamax restituisce valori fuori dalla
+     * finestra, di quanto: i limiti inferiore e superiore si stringono finché coincidono.
+     * Le ricerche ripetute costano poco perché la tabella delle trasposizioni ha già i limiti dei nodi.
+     * La mossa è quella dell'ultima ricerca che ha superato beta: in quelle che falliscono in
+     * basso tutte le mosse sono solo limitate dall'alto e la mossa della radice non è significativa.
+     */
+    private long mtdf(CXBoard B, int depthMax, long previsto) {
+        long g = previsto;
+        long inferiore = -INFINITO, superiore = INFINITO;
+        int mossa = -1;
+        while (inferiore < superiore) {
+            long beta = g == inferiore ? g + 1 : g;
+            g = cercaRadice(B, depthMax, beta - 1, beta);
+            if (tempoScaduto)
+                return g;
+            if (g < beta) {
+                superiore = g;
+            } else {
+                inferiore = g;
+                mossa = mossaMigliore;
             }
-            //Sort the moves in decreasing order (la prima ha la valutazione più alta)
-            orderedMoves.sort((a, b) -> b.second.compareTo(a.second));
-
-            // Itero sulle mosse scelte
-            for (Coppia<Integer, Long> j : orderedMoves) {
-                // Ottengo la mossa
-                Integer i = j.first;
+        }
+        if (mossa != -1)
+            mossaMigliore = mossa;
+        return g;
+    }
 
-                if (timeIsRunningOut()) {
-                    this.tempoScaduto = true;
-                    return val;
-                }
+    //Ricerca dalla radice, sequenziale o divisa tra i thread della YBW
+    private long cercaRadice(CXBoard B, int depthMax, long alpha, long beta) {
+        if (ricercaYBW == null)
+            return negamax(B, 0, depthMax, alpha, beta, 1);
+
+        long val = ricercaYBW.cerca(B, valutatore.punteggio(), depthMax, alpha, beta);
+        if (ricercaYBW.interrotta())
+            tempoScaduto = true;
+        if (ricercaYBW.mossa() != -1)
+            mossaMigliore = ricercaYBW.mossa();
+        return val;
+    }
 
-                //Eseguo la minimax sulla mossa minimizzando il punteggio dell'avversario
-                B.markColumn(i);
-                long childVal = minimax(B, j.second, depthCurrent+1, depthMax, alpha, beta, false);
-                B.unmarkColumn();
-
-                // Aggiorno il valore della mossa migliore se ho trovato una mossa migliore
-                if (childVal > val) { //Maximize
-                    val = childVal;
-
-                    //Se la profondità corrente è 0, allora sono nel nodo radice, quindi devo aggiornare la mossa migliore
-                    //Ritorniamo qui dopo la ricorrenza che ha ripassato il controllo alla chiamata di minimax con currentDepth = 0
-                    if (depthCurrent == 0)  {
-                        //If true we are in the root node, so we should update the bestMove variable.
-                        mossaMigliore = i;
-                    }
+    /*
+     * Ricerca negamax con principal variation search. Il punteggio restituito è dal punto di
+     * vista del giocatore che muove: colore vale 1 se muove Ronaldo e -1 se muove l'avversario,
+     * mentre le valutazioni restano dal punto di vista di Ronaldo. Le mosse si fanno con il
+     * valutatore, che tiene la valutazione della tavola B aggiornata in O(1) per foglia.
+     * La prima mossa viene cercata con la finestra piena, le altre con una finestra nulla
+     * e vengono ricercate solo se risultano migliori di alpha.
+     */
+    private long negamax(CXBoard B, int depthCurrent, int depthMax, long alpha, long beta, int colore) {
+        nodi++;
+
+        //Situazione terminale, la partita è finita
+        if (B.gameState() != CXGameState.OPEN || B.numOfFreeCells() == 0)
+            return colore * evaluate(B, depthCurrent);
+
+        //Cerco la posizione nella tabella delle trasposizioni
+        long chiave = B.hash();
+        int profondita = depthMax - depthCurrent;
+        long alphaIniziale = alpha, betaIniziale = beta;
+        int mossaTabella = -1;
+        if (tabella.cerca(chiave, depthCurrent)) {
+            mossaTabella = tabella.mossa();
+            //Nel nodo radice serve comunque la mossa migliore, quindi uso il punteggio solo negli altri nodi
+            if (depthCurrent > 0 && tabella.profondita() >= profondita) {
+                long punteggio = tabella.punteggio();
+                switch (tabella.limite()) {
+                    case TabellaTrasposizione.ESATTO:
+                        return punteggio;
+                    case TabellaTrasposizione.INFERIORE:
+                        alpha = Math.max(alpha, punteggio);
+                        break;
+                    case TabellaTrasposizione.SUPERIORE:
+                        beta = Math.min(beta, punteggio);
+                        break;
                 }
-
-                //Aggiorno alpha
-                alpha = Math.max(alpha, val);
-                if (beta <= alpha) //Pruning
-                    break;
+                if (beta <= alpha)
+                    return punteggio;
             }
-            return val;
         }
 
-        else {
-            //Inizializzo il valore della mossa migliore a max
-            long val = Long.MAX_VALUE - 1;
-            Integer[] L = B.getAvailableColumns();
-            //Array di coppie (mossa, valore) che verranno ordinati in ordine decrescente
-            List<Coppia<Integer, Long>> orderedMoves = new ArrayList<>();
-
-            //Qui vengono calcolati le valutazioni delle mosse disponibili
-            for (int i : L) {
-                long childEval = update_evaluate(B, depthCurrent, current_eval, i);
-                orderedMoves.add(new Coppia<>(i, childEval));
-            }
-            //ordinamento in ordine crescente
-            orderedMoves.sort((a, b) -> -b.second.compareTo(a.second));
-
-            for (Coppia<Integer, Long> j : orderedMoves) {
-                int i = j.first;
-
-                if (timeIsRunningOut()) {
-                    this.tempoScaduto = true;
-                    return val;
-                }
-
-                B.markColumn(i);
-                val = Math.min(val, minimax(B, j.second, depthCurrent+1, depthMax, alpha, beta, true)); //Minimize
-                B.unmarkColumn();
-
-                beta = Math.min(beta, val);
-                if (beta <= alpha) //Pruning
-                    break;
-            }
+        //Si è raggiunta la profondità massima, salvo la valutazione della foglia dopo le mosse forzate
+        if (depthCurrent == depthMax) {
+            long val = quiescenza(B, depthCurrent, colore, ESTENSIONI_MINACCE);
+            tabella.salva(chiave, depthCurrent, 0, TabellaTrasposizione.ESATTO, val, -1);
             return val;
         }
-    }
 
-    private boolean isStartingEvaluation = false;
-
-    //Inizializziamo gli array di valutazione
-    CXCellState[] subdiag_array;
-    CXCellState[] col_array;
-    CXCellState[] row_array;
-
-
-    void updateDescendingDiagonalEvaluations(int index, CXCellState[][] board) {
-        //Ri-ottengo la colonna della diagonale con la formula Colonna = Indice % NumeroColonneGeneratori
-        int c = index % Cdiag;
-        //Ri-ottengo la riga della diagonale con la formula Riga = (Indice - Colonna) / NumeroColonneGeneratori
-        //(formula inversa rispetto a quella degli indici)
-        int r = (index - c) / Cdiag;
-
-        //Per ogni elemento della diagonale creo un array che contiene gli elementi della diagonale
-        for (int i = 0; i < K; i++)
-            subdiag_array[i] = board[r + i][c + i];
-
-        // Valuto la diagonale e aggiorno la valutazione corrente
-        long diag_score = eval_sub(subdiag_array, 0, K);
-
-        // Rimuove la valutazione precedente della diagonale;
-        lastEvaluation -= lastDescDiagEvaluations[index];
-        // Inserisci la nuova valutazione della diagonale
-        lastDescDiagEvaluations[index] = diag_score;
-        // Aggiorna la valutazione corrente
-        lastEvaluation += lastDescDiagEvaluations[index];
-    }
-
-    void updateAscendingDiagonalEvaluations(int index, CXCellState[][] board) {
-        //Ri-ottengo la colonna della diagonale con la formula Colonna = Indice % NumeroColonneGeneratori
-        int c = index % Cdiag;
-        //Ri-ottengo la riga della diagonale con la formula Riga = (Indice - Colonna) / NumeroColonneGeneratori + HM
-        //(formula inversa rispetto a quella degli indici)
-        int r = (index - c) / Cdiag + HM;
-
-        //Per ogni elemento della diagonale creo un array che contiene gli elementi della diagonale
-        for (int i = 0; i < K; i++)
-            subdiag_array[i] = board[r - i][c + i];
-        // Valuto la diagonale e aggiorno la valutazione corrente
-        long diag_score = eval_sub(subdiag_array, 0, K);
-
-        // Rimuove la valutazione precedente della diagonale;
-        lastEvaluation -= lastAscDiagEvaluations[index];
-        // Inserisci la nuova valutazione della diagonale
-        lastAscDiagEvaluations[index] = diag_score;
-        // Aggiorna la valutazione corrente
-        lastEvaluation += lastAscDiagEvaluations[index];
-    }
-
-    void updateDiagonalEvaluations(int tmpRow, int tmpCol, CXCellState[][] board, boolean isDescending) {
-        if (isDescending) {
-            do {
-                //Calcoliamo l'indice della diagonale con la formula Riga * NumeroColonneGeneratori + Colonna
-                //Moltiplicando R per Cdiag diamo un peso al valore in base alla riga in cui si trova
-                //Aggiungendo C lo spostiamo in base alla colonna in cui si trova
-                //Proietta la mossa sull'indice della diagonale
-                int possibleIndex = tmpCol + (Cdiag * tmpRow);
-
-                //Controlla che l'indice appartenga a quelli dei generatori
-                if (possibleIndex < DiagNum) {
-                    //Calcola  la valutazione della diagonale e aggiorna la valutazione corrente
-                    updateDescendingDiagonalEvaluations(possibleIndex, board);
-                }
-                //Decrementa per risalire la diagonale al suo possibile generatore
-                tmpRow--;
-                tmpCol--;
+        // Inizializzo il valore della mossa migliore a min
+        long val = -INFINITO;
+        int migliore = -1;
+        //Mosse disponibili, loro valutazioni e priorità, nei buffer di questa profondità
+        int[] L = colonne(depthCurrent);
+        long[] V = valori(depthCurrent);
+        long[] P = priorita(depthCurrent);
+        int n = B.fillAvailableColumns(L);
+        int giocatore = B.currentPlayer();
+
+        if (profondita >= PROFONDITA_VALUTAZIONE) {
+            //Vicino alla radice il sottoalbero è grande e conviene valutare ogni figlio:
+            //ordino in ordine decrescente per Ronaldo e crescente per l'avversario
+            for (int k = 0; k < n; k++) {
+                V[k] = update_evaluate(B, depthCurrent, L[k]);
+                P[k] = colore * V[k];
             }
-            //Controlla che non si esca dalla griglia
-            while (tmpRow >= 0 && tmpCol >= 0);
-        } else  {
-            do {
-                //Calcoliamo l'indice della diagonale con la formula (Riga - (Distanza tra l'ultima riga e la prima riga di generatori di diagonali ascendenti)) * NumeroColonneGeneratori + Colonna
-                //Stessa motivazione di prima ma shiftiamo le righe sopra alla tavola per lavorare sempre con indici che vanno da 0 a DiagNum
-                //Proietta la mossa sull'indice della diagonale
-                int possibleIndex = ((tmpRow - HM) * Cdiag) + tmpCol;
-                //Controlla che l'indice appartenga a quelli dei generatori e che sia positivo
-                if (possibleIndex < DiagNum && possibleIndex > 0) {
-                    updateAscendingDiagonalEvaluations(possibleIndex, board);
+        } else {
+            //Altrove ordino con le euristiche, senza valutare i figli
+            long vincenti = 0L;
+            for (int k = 0, w = -1; k < n; k++) {
+                int i = L[k];
+                if (i >>> 6 != w) {
+                    w = i >>> 6;
+                    vincenti = B.winningColumnsMask(w);
                 }
-                //Sali con la riga e scendi con la colonna per risalire al generatore della diagonale ascendente
-                tmpRow++;
-                tmpCol--;
+                P[k] = prioritaEuristica(B, giocatore, depthCurrent, i, (vincenti >>> (i & 63) & 1L) != 0);
             }
-            //Controlla che non si esca dalla griglia
-            while (tmpRow < M && tmpCol >= 0);
         }
-    }
-
-    long updateColumnEvaluations(Integer[] cols, CXCellState[][] board, boolean[] isEmptyRow) {
-        // Vertical alignments
-        long score = 0L;
-
-        // Per ogni colonna (possono essere tutte o solo alcune selezionate)
-        for (int move : cols) {
-
-            //Controllo quali righe sono vuote
-            for (int d = 0; d < M; d++) {
-                col_array[d] = board[d][move]; // col_array now contains the current column
-                if (col_array[d] != CXCellState.FREE) isEmptyRow[d] = false; //If board[d][lastMoves[i]] contains a piece, row d is not empty
-            }
-
-            long col_score = 0L;
-            //Se la riga più in basso è vuota, la colonna è vuota, quindi la ignoro
-            if (col_array[M - 1] == CXCellState.FREE) continue;
-
-            //Controlla ogni sottosequenza di K elementi a partire dalla posizione r (primo generatore di sequenza in colonna) fino ad arrivare a 0
-            for (int r = M - K; r >= 0; r--) {
-                // Se la cella più in basso della sottocolonna è vuota, la sottocolonna è vuota, quindi la ignoro
-                if (col_array[r + K - 1] == CXCellState.FREE) break;
-                //Calcola lo score della sottocolonna e aggiorna lo score della colonna
-                long subSeqScore = eval_sub(col_array, r, r + K);
-                col_score += subSeqScore;
+        //La mossa migliore della tabella viene provata per prima
+        ordinaMosse(L, V, P, n, mossaTabella);
+
+        // Itero sulle mosse scelte
+        boolean prima = true;
+        for (int k = 0; k < n; k++) {
+            // Ottengo la mossa
+            int i = L[k];
+
+            if (timeIsRunningOut()) {
+                this.tempoScaduto = true;
+                return val;
             }
 
-            if (isStartingEvaluation) {
-                //Rimuove la valutazione precedente della colonna;
-                lastEvaluation -= lastColumnEvaluations[move];
-                //Inserisci la nuova valutazione della colonna
-                lastColumnEvaluations[move] = col_score;
-                //Aggiorna la valutazione corrente
-                lastEvaluation += lastColumnEvaluations[move];
+            int riga = B.freeRow(i);
+            valutatore.gioca(i);
+            long childVal;
+            if (prima) {
+                //La prima mossa (la variante principale) viene cercata con la finestra piena
+                childVal = -negamax(B, depthCurrent+1, depthMax, -beta, -alpha, -colore);
+                prima = false;
             } else {
-                score += col_score;
+                //Le altre con una finestra nulla, che dice solo se la mossa supera alpha
+                childVal = -negamax(B, depthCurrent+1, depthMax, -alpha - 1, -alpha, -colore);
+                //Se la supera senza arrivare a beta ripeto la ricerca con la finestra piena
+                if (alpha < childVal && childVal < beta)
+                    childVal = -negamax(B, depthCurrent+1, depthMax, -beta, -alpha, -colore);
             }
-        }
-
-        return score;
-    }
-
-    long updateRowEvaluations(Integer[] rows, CXCellState[][] board, boolean[] isEmptyRow) {
-        // Horizontal alignments
-        long score = 0L;
-
-        //Per ogni riga (possono essere tutte o solo alcune selezionate)
-        for (int row : rows) {
-            //Se la riga è vuota, la ignoro
-            if(isEmptyRow[row]) break;
+            valutatore.annulla();
 
-            //Contiene l'array della riga corrente
-            row_array = board[row];
-            //Inizializzo lo score della riga corrente a 0
-            long row_score = 0L;
+            // Aggiorno il valore della mossa migliore se ho trovato una mossa migliore
+            if (childVal > val) {
+                val = childVal;
+                migliore = i;
 
-            //Trovo le sottosequenze della riga partendo da 0 fino a N-K
-            for (int c = 0; c < N - (K - 1); c++) {
-                // Valuto la sottosequenza di K elementi a partire dalla posizione c fino a c+K
-                long subRowScore = eval_sub(row_array, c, c + K); // Increment the current score by the score assigned to the
-                //aggiorno lo score della riga corrente
-                row_score += subRowScore;
+                //Se la profondità corrente è 0, allora sono nel nodo radice, quindi devo aggiornare la mossa migliore
+                if (depthCurrent == 0)  {
+                    //If true we are in the root node, so we should update the bestMove variable.
+                    mossaMigliore = i;
+                }
             }
-            if (isStartingEvaluation) {
-                //Rimuove la valutazione precedente della riga;
-                lastEvaluation -= lastRowEvaluations[row];
-                //Inserisci la nuova valutazione della riga
-                lastRowEvaluations[row] = row_score;
-                //Aggiorna la valutazione corrente
-                lastEvaluation += lastRowEvaluations[row];
-            } else {
-                score += row_score;
+
+            //Aggiorno alpha
+            alpha = Math.max(alpha, val);
+            if (beta <= alpha) { //Pruning
+                //La mossa ha causato un taglio: la ricordo come killer e ne aumento la history
+                if (killer[depthCurrent][0] != i) {
+                    killer[depthCurrent][1] = killer[depthCurrent][0];
+                    killer[depthCurrent][0] = i;
+                }
+                history[giocatore][riga * N + i] += (long) profondita * profondita;
+                break;
             }
         }
-
-        return score;
+        salvaInTabella(chiave, depthCurrent, profondita, alphaIniziale, betaIniziale, val, migliore);
+        return val;
     }
 
-    private long evaluate(CXBoard B, int depth) {
-
-        //Situazione terminale
-        if (B.gameState() != CXGameState.OPEN) {
-            //Se ho vinto, ritorno un valore molto alto
-            if (B.gameState() == vittoriaRonaldo)
-                return Long.MAX_VALUE - 1 - depth;
-            //Se ha vinto l'avversario, ritorno un valore molto basso
-            else if (B.gameState() == vittoriaAvversario)
-                return Long.MIN_VALUE + 1 + depth;
-            //Se è un pareggio, ritorno 0
-            else
-                return 0L;
-        }
-
-        //Matrice della tavola di gioco
-        CXCellState[][] board = B.getBoard();
-        boolean[] isEmptyRow = new boolean[M];
-        long score = 0L;
-
-        //Inizializzo tutte le righe come vuote
-        for(int i = 0; i < M; i++) isEmptyRow[i] = true;
-
-        if (isStartingEvaluation && lastColumn != -1) {
-
-            //get opponent move
-            CXCell lastMove = B.getLastMove();
-            int opponentCol = lastMove.j;
-            int opponentRow = lastMove.i;
-
-            //Column update
-            //Se la mossa dell'avversario è stata fatta nella stessa colonna della mossa precedente, aggiorno solo quella colonna
-            Integer[] lastColumns = opponentCol == lastColumn ? new Integer[] {opponentCol} : new Integer[] {opponentCol, lastColumn};
-            updateColumnEvaluations(lastColumns, board, isEmptyRow);
-
-            //Row update
-            //Se la mossa dell'avversario è stata fatta nella stessa riga della mossa precedente, aggiorno solo quella riga
-            Integer[] lastRows = opponentRow == lastRow ? new Integer[] {opponentRow} : new Integer[] {opponentRow, lastRow};
-            Arrays.sort(lastRows, Collections.reverseOrder());
-            updateRowEvaluations(lastRows, board, isEmptyRow);
-
-            //DIAGONALS update sia discendenti che ascendenti.
-            updateDiagonalEvaluations(lastRow, lastColumn, board, true);
-            updateDiagonalEvaluations(lastRow,lastColumn,board,false);
-            //Se la mossa dell'avversario è stata fatta in una colonna diversa da quella precedente, aggiorno anche quella diagonale
-            if (opponentCol != lastColumn) {
-                updateDiagonalEvaluations(opponentRow, opponentCol, board, true);
-                updateDiagonalEvaluations(opponentRow,opponentCol,board,false);
+    /*
+     * Valutazione di una foglia dal punto di vista del giocatore che muove, estesa alle mosse
+     * forzate con le maschere delle minacce: una vittoria immediata vale la vittoria, due minacce
+     * dell'avversario la sconfitta e una minaccia sola viene parata, per al più estensioni mosse.
+     * Senza minacce da parare vale la valutazione: cercare le mosse che creano due minacce
+     * costerebbe una mossa e una rilettura delle minacce per colonna a ogni foglia.
+     * Il valore non dipende dalla finestra alpha-beta, quindi si salva come esatto.
+     */
+    private long quiescenza(CXBoard B, int depthCurrent, int colore, int estensioni) {
+        if (B.gameState() != CXGameState.OPEN || B.numOfFreeCells() == 0)
+            return colore * evaluate(B, depthCurrent);
+
+        int giocatore = B.currentPlayer();
+        int minacce = 0, forzata = -1;
+        for (int w = 0; w < parole; w++) {
+            if (B.winningColumnsMask(w) != 0L)
+                return colore * vittoria(depthCurrent + 1, giocatore);
+            long b = B.blockingColumnsMask(w);
+            if (b != 0L) {
+                minacce += Long.bitCount(b);
+                forzata = (w << 6) + Long.numberOfTrailingZeros(b);
             }
+        }
+        //Due minacce non si parano entrambe, l'avversario vince alla sua prossima mossa
+        if (minacce >= 2)
+            return colore * vittoria(depthCurrent + 2, 1 - giocatore);
+
+        if (minacce == 0 || estensioni == 0)
+            return colore * evaluate(B, depthCurrent);
+
+        nodi++;
+        valutatore.gioca(forzata);
+        long val = -quiescenza(B, depthCurrent + 1, -colore, estensioni - 1);
+        valutatore.annulla();
+        return val;
+    }
 
-            //Aggiorno lo score in base alle modifiche fatte
-            score = lastEvaluation;
-
-        } else {
+    //Punteggio, dal punto di vista di Ronaldo, della vittoria di giocatore alla profondità depth
+    private long vittoria(int depth, int giocatore) {
+        return giocatore == mio ? Long.MAX_VALUE - 1 - depth : Long.MIN_VALUE + 1 + depth;
+    }
 
-            //Aggiorno le colonne
-            //Aggiorno lo score direttamente solo se non sto facendo la valutazione iniziale, altrimenti
-            //aggiorno l'array di cache o comunque aggiorno dentro la funzione
-            long newColScore = updateColumnEvaluations(B.getAvailableColumns(), board, isEmptyRow);
-            if (!isStartingEvaluation)
-                score += newColScore;
-
-            //Creo un array di righe dalla più alta alla più bassa (dal basso all'alto nella tavola)
-            Integer[] allRows = new Integer[M];
-            for(int i = M-1; i >= 0; i--) {
-                allRows[i] = i;
-            }
+    /*
+     * Priorità economica di una mossa: prima le mosse vincenti, poi le due killer di questa
+     * profondità, poi la history della cella e a parità le colonne più vicine al centro.
+     */
+    private long prioritaEuristica(CXBoard B, int giocatore, int depthCurrent, int col, boolean vincente) {
+        if (vincente) return Long.MAX_VALUE;
+        if (col == killer[depthCurrent][0]) return Long.MAX_VALUE - 1;
+        if (col == killer[depthCurrent][1]) return Long.MAX_VALUE - 2;
+        long centro = N - Math.abs(2 * col - (N - 1));
+        return (history[giocatore][B.freeRow(col) * N + col] << 16) + centro;
+    }
 
-            //Aggiorno le righe
-            //Aggiorno lo score direttamente solo se non sto facendo la valutazione iniziale, altrimenti
-            //aggiorno l'array di cache o comunque aggiorno dentro la funzione
-            long newRowScore = updateRowEvaluations(allRows, board, isEmptyRow);
-            if (!isStartingEvaluation)
-                score += newRowScore;
-
-
-
-            /* INDICI DELLE DIAGONALI
-             * Gli indici delle diagonali discendenti sono calcolati con la formula:
-             * Indice = Riga * NumeroColonneGeneratori + Colonna
-             * Questo serve a proiettare la cella sull'indice della diagonale
-             *
-             * Per le diagonali ascendenti invece la formula è:
-             * Indice = (Riga - (Distanza tra l'ultima riga e la prima riga di generatori di diagonali ascendenti)) * NumeroColonneGeneratori + Colonna
-             */
-
-            // Descending diagonals
-            //Itero per righe e colonne dove posso trovare diagonali discendenti
-            //Escludendo le celle negli angoli in alto a destra e in basso a sinistra
-            for (int r = 0; r < Rdiag; r++) {
-                for (int c = 0; c < Cdiag; c++) {
-
-                    // Per ogni generatore della diagonale riempio un array che contiene gli elementi della diagonale
-                    for (int i = 0; i < K; i++)
-                        subdiag_array[i] = board[r + i][c + i]; // subdiag_array now contains the elements of the current
-
-                    // Valuto la diagonale
-                    long subSeqScore = eval_sub(subdiag_array, 0, K); // Increment the current score by the score assigned to the
-                    score += subSeqScore;
-
-                    //Aggioorno l'array di cache se sto facendo la valutazione iniziale
-                    if (isStartingEvaluation) {
-                        lastDescDiagEvaluations[c + (Cdiag * r)] = subSeqScore;
-                    }
-                }
+    /*
+     * Ordina sul posto le n mosse di L, con le valutazioni V, per priorità P decrescente e sposta in
+     * testa la mossa suggerita dalla tabella delle trasposizioni, se c'è.
+     * N è piccolo, quindi basta un insertion sort, che è stabile e non alloca.
+     */
+    static void ordinaMosse(int[] L, long[] V, long[] P, int n, int mossaTabella) {
+        for (int k = 1; k < n; k++) {
+            int mossa = L[k];
+            long valore = V[k];
+            long p = P[k];
+            int h = k - 1;
+            for (; h >= 0 && P[h] < p; h--) {
+                L[h + 1] = L[h];
+                V[h + 1] = V[h];
+                P[h + 1] = P[h];
             }
+            L[h + 1] = mossa;
+            V[h + 1] = valore;
+            P[h + 1] = p;
+        }
 
-
-            //Ascending diagonals
-            //Itero per righe e colonne dove posso trovare diagonali ascendenti
-            //Escludendo le celle negli angoli in alto a sinistra e in basso a destra
-            for (int r = K -1; r < M; r++) {
-                for(int c = 0; c < N - (K - 1); c++) {
-
-                    // Per ogni generatore della diagonale riempio un array che contiene gli elementi della diagonale
-                    for (int i = 0; i < K; i++)
-                        subdiag_array[i] = board[r - i][c + i];
-                    // Valuto la diagonale
-                    long subSeqScore = eval_sub(subdiag_array, 0, K);
-                    // Aggioorno lo score
-                    score += subSeqScore;
-
-                    //Aggioorno l'array di cache se sto facendo la valutazione iniziale
-                    if (isStartingEvaluation) {
-                        lastAscDiagEvaluations[(r - HM) * Cdiag + c] = subSeqScore;
-                    }
-                }
+        if (mossaTabella == -1) return;
+        for (int k = 1; k < n; k++) {
+            if (L[k] == mossaTabella) {
+                long valore = V[k];
+                System.arraycopy(L, 0, L, 1, k);
+                System.arraycopy(V, 0, V, 1, k);
+                System.arraycopy(P, 0, P, 1, k);
+                L[0] = mossaTabella;
+                V[0] = valore;
+                return;
             }
+        }
+    }
 
+    //Salva il risultato di un nodo nella tabella delle trasposizioni, con il tipo di limite
+    //dato dalla finestra alpha-beta con cui è stato cercato
+    private void salvaInTabella(long chiave, int depthCurrent, int profondita, long alpha, long beta, long val, int migliore) {
+        //Se il tempo è scaduto il valore non è affidabile
+        if (tempoScaduto) return;
+        tabella.salva(chiave, depthCurrent, profondita, limite(val, alpha, beta), val, migliore);
+    }
 
+    //Tipo di limite del valore val di un nodo cercato con la finestra alpha-beta
+    static int limite(long val, long alpha, long beta) {
+        if (val <= alpha)
+            return TabellaTrasposizione.SUPERIORE;
+        if (val >= beta)
+            return TabellaTrasposizione.INFERIORE;
+        return TabellaTrasposizione.ESATTO;
+    }
 
+    /* Metodi usati da RicercaYBW sull'aiutante del thread corrente */
 
-        }
-
-        return score;
+    //Prepara l'aiutante per la ricerca di una nuova mossa, con una vista della tabella del principale
+    void preparaAiutante(TabellaTrasposizione vista, long inizio) {
+        tabella = vista;
+        tempo.inizia(inizio);
+        preparaRicerca();
     }
 
+    //Ricerca sequenziale di un sottoalbero, che si ferma anche quando annulla diventa vero
+    long cercaSottoalbero(CXBoard B, long current_eval, int depthCurrent, int depthMax, long alpha, long beta,
+                          int colore, BooleanSupplier annulla) {
+        tempoScaduto = false;
+        valutatore.collega(B, current_eval);
+        annullata = annulla;
+        if (depthCurrent == 0) mossaMigliore = -1;
+        long val = negamax(B, depthCurrent, depthMax, alpha, beta, colore);
+        annullata = null;
+        return val;
+    }
 
-    private long update_subsequences(long lastEval, boolean adding, int row, int col, CXCellState[][] board) {
-
-        //Prende la riga e la colonna della mossa e calcola gli indici di inizio e fine
-        //delle sottosequenze in cui la mossa è contenuta, le funzioni min e max servono
-        //per non uscire dalla board
-        int verticalStart = Math.max(row - (K-1), 0);
-        int verticalEnd = Math.min(row + (K-1), M-1);
-        int horizontalStart = Math.max(col - (K-1), 0);
-        int horizontalEnd = Math.min(col + (K-1), N-1);
+    //Vero se l'ultima ricerca di cercaSottoalbero è stata interrotta
+    boolean interrotta() {
+        return tempoScaduto;
+    }
 
-        CXCellState[] current_sub = new CXCellState[K];
+    //Punteggio dell'ultima mossa scelta, dal punto di vista di Ronaldo
+    long punteggioRadice() {
+        return punteggioRadice;
+    }
 
-        //Sequenze verticali
-        //Itera per le sottosequenze di colonne che contengono la mossa
-        for(int i = verticalStart; i+K-1 <= verticalEnd; i++){
-            //Crea un array che contiene gli elementi della sottosequenza
-            for(int r = i; r < i+K; r++) current_sub[r-i] = board[i][col];
-            //Rimuove la valutazione della sottosequenza
-            lastEval += (adding ? 1 : -1) * eval_sub(current_sub, 0, K);
-        }
+    //Mossa migliore dell'ultima ricerca partita dalla radice
+    int mossaRadice() {
+        return mossaMigliore;
+    }
 
-        //Sequenze orizzontali
-        //Itera per le sottosequenze di righe che contengono la mossa
-        for(int j = horizontalStart; j+K-1 <= horizontalEnd; j++){
-            //Crea un array che contiene gli elementi della sottosequenza
-            current_sub = Arrays.copyOfRange(board[row], j, j+K);
-            //Rimuove la valutazione della sottosequenza
-            lastEval += (adding ? 1 : -1) * eval_sub(current_sub, 0, K);
-        }
+    //Valutazione della posizione dal punto di vista del giocatore che muove
+    long valutaPosizione(CXBoard B, int depth, int colore) {
+        return colore * evaluate(B, depth);
+    }
 
-        //Sequence diagonali discendenti
-        //Itera per le sottosequenze di diagonali discendenti che contengono la mossa
-        for(int i = verticalStart, j = horizontalStart; i+K-1 <= verticalEnd && j+K-1 <= horizontalEnd; i++, j++){
-            //Crea un array che contiene gli elementi della sottosequenza
-            for(int c = 0; c < K; c++) current_sub[c] = board[i+c][j+c];
-            //Rimuove la valutazione della sottosequenza
-            lastEval += (adding ? 1 : -1) * eval_sub(current_sub, 0, K);
-        }
+    //Valutazione della posizione dopo la mossa col, dal punto di vista di Ronaldo
+    long valutaMossa(CXBoard B, int depth, long current_eval, int col) {
+        valutatore.collega(B, current_eval);
+        return update_evaluate(B, depth, col);
+    }
 
-        //Sequenze diagonali ascendenti
-        //Itera per le sottosequenze di diagonali ascendenti che contengono la mossa
-        for(int i = verticalEnd, j = horizontalStart; i-K+1 >= verticalStart && j+K-1 <= horizontalEnd; i--, j++){
-            //Crea un array che contiene gli elementi della sottosequenza
-            for(int c = 0; c < K; c++) current_sub[c] = board[i-c][j+c];
-            //Rimuove la valutazione della sottosequenza
-            lastEval += (adding ? 1 : -1) * eval_sub(current_sub, 0, K);
-        }
+    TabellaTrasposizione tabella() {
+        return tabella;
+    }
 
-        return lastEval;
+    void contaNodo() {
+        nodi++;
     }
 
+    long nodi() {
+        return nodi;
+    }
 
     /*
-     * Questa funzione aggiorna la valutazione corrente della tavola di gioco basandosi
-     * su delle euistiche che valutano le sottosequenze di K elementi in cui la mossa
-     * è contenuta.
+     * Usato da ConfrontaRadici: cerca board con l'iterative deepening fino alla profondità indicata,
+     * nel solo thread corrente e senza libro, risolutore e ponder, e restituisce i nodi visitati.
+     * Anche con la YBW la ricerca è la negamax sequenziale. Il tempo resta quello di initPlayer.
      */
-    private long update_evaluate(CXBoard B, int depth, long lastEval, int col){
-        B.markColumn(col);
-
-        //Se la partita è finita o non ci sono più celle libere, ritorna la valutazione
-        if((B.gameState() != CXGameState.OPEN) || (B.numOfFreeCells() == 0)){
-            // Se lo stato è terminale la valutazione è calcolata in O(1) da eval()
-            long score = evaluate(B, depth+1);
-            B.unmarkColumn();
-            return score;
+    long cercaFinoA(CXBoard board, int profondita) {
+        RicercaYBW ybw = ricercaYBW;
+        ricercaYBW = null;
+        try {
+            tempo.inizia(System.nanoTime());
+            tabella.nuovaRicerca();
+            preparaRicerca();
+            profonditaMassima = profondita;
+            iterativeDeepening(board, 0);
+        } finally {
+            profonditaMassima = Integer.MAX_VALUE;
+            ricercaYBW = ybw;
         }
+        return nodi;
+    }
 
-        //Ottiene la riga della mossa
-        CXCell newMove = B.getLastMove();
-        int row = newMove.i;
-        B.unmarkColumn();
-
-        //Matrice della tavola di gioco
-        CXCellState[][] board = B.getBoard();
-
-        /*
-         * Qui vengono rimosse dalla valutazione le sottosequenze della tavola prima di
-         * contentere la nuova mossa.
-         */
-        lastEval = update_subsequences(lastEval, false, row, col, board);
-
-
-        /*
-         * Qui vengono aggiunte alla valutazione le sottosequenze della tavola dopo
-         * aver aggiunto la nuova mossa.
-         */
-        B.markColumn(col);
-        lastEval = update_subsequences(lastEval, true, row, col, board);
-        B.unmarkColumn();
+    //Restituisce il buffer delle colonne disponibili per la profondità depth
+    private int[] colonne(int depth) {
+        if (colonne[depth] == null)
+            colonne[depth] = new int[N];
+        return colonne[depth];
+    }
 
-        return lastEval;
+    //Restituisce il buffer delle valutazioni delle colonne per la profondità depth
+    private long[] valori(int depth) {
+        if (valori[depth] == null)
+            valori[depth] = new long[N];
+        return valori[depth];
     }
 
-    private int eval_sub(CXCellState[] arr, int start, int end) {
-        //Counter per i miei pezzi e quelli dell'avversario
-        int count_mine = 0, count_yours = 0;
-        int score = 0;
+    //Restituisce il buffer delle priorità delle colonne per la profondità depth
+    private long[] priorita(int depth) {
+        if (priorita[depth] == null)
+            priorita[depth] = new long[N];
+        return priorita[depth];
+    }
 
-        //Conto in una sequenza quante celle sono mie e quante sono dell'avversario
-        for (int i = start; i < end; i++) {
-            if (arr[i] == cellaRonaldo)
-                count_mine++;
+    /*
+     * Valutazione della tavola B dal punto di vista di Ronaldo. Le posizioni terminali valgono
+     * una vittoria, una sconfitta o un pareggio, le altre la valutazione del valutatore,
+     * che durante la ricerca è collegato a B.
+     */
+    private long evaluate(CXBoard B, int depth) {
 
-            else if (arr[i] != CXCellState.FREE)
-                count_yours++;
+        //Situazione terminale
+        if (B.gameState() != CXGameState.OPEN) {
+            //Se ho vinto, ritorno un valore molto alto
+            if (B.gameState() == vittoriaRonaldo)
+                return Long.MAX_VALUE - 1 - depth;
+            //Se ha vinto l'avversario, ritorno un valore molto basso
+            else if (B.gameState() == vittoriaAvversario)
+                return Long.MIN_VALUE + 1 + depth;
+            //Se è un pareggio, ritorno 0
+            else
+                return 0L;
         }
 
-        //Incremento lo score in base alla differenza tra i miei pezzi e quelli dell'avversario
-        score += (count_mine - count_yours);
-
+        return valutatore.punteggio();
+    }
 
-        /*
-            Controlla se la sottosequenza è vincente o perdente, se io non ho pezzi o se l'avversario non ha pezzi
-            si eleva al quadrato per dare più importanza alla sottosequenza, esempio, in una sotto sequenza di 4 l'avversario
-            ha 3 pezzi, quindi questa colonna va scelta ASSOLUTAMENTE per bloccargli il quarto
-         */
-        if (count_yours == 0)
-            score *= (int) Math.pow(2, count_mine);
-        if (count_mine == 0)
-            score *= (int) Math.pow(2, count_yours);
+    /*
+     * Valutazione della tavola dopo la mossa col del giocatore che muove, senza giocarla:
+     * il valutatore rivaluta solo le sottosequenze che contengono la nuova cella.
+     */
+    private long update_evaluate(CXBoard B, int depth, int col) {
+        long score = valutatore.punteggioDopo(col);
+
+        //La mossa vince, oppure riempie l'ultima cella senza vincere
+        if (valutatore.vincente())
+            return vittoria(depth + 1, B.currentPlayer());
+        if (B.numOfFreeCells() == 1)
+            return 0L;
 
         return score;
     }
@@ -0,0 +1,171 @@
+package connectx.Ronaldo;
+
+import java.util.Arrays;
+
+/**
+ * Tabella delle trasposizioni di dimensione fissa per la ricerca alpha-beta.
+ * <p>
+ * Le posizioni sono indicizzate con la chiave Zobrist di CXBoard. Ogni bucket ha due
+ * slot: il primo viene sostituito solo da ricerche più profonde (o da una ricerca più
+ * recente), il secondo viene sempre sostituito. Ogni slot occupa tre long consecutivi
+ * dell'array: chiave, punteggio e informazioni (mossa, tipo di limite, profondità, età).
+ * </p>
+ * <p>
+ * Più thread possono usare la stessa tabella senza lock, ognuno con la propria vista
+ * (vedi vista()): la chiave viene salvata in XOR con punteggio e informazioni, così uno
+ * slot scritto a metà da un altro thread non corrisponde a nessuna chiave e viene ignorato.
+ * </p>
+ */
+public class TabellaTrasposizione {
+
+    // Tipi di limite del punteggio salvato
+    public static final int ESATTO = 0;
+    public static final int INFERIORE = 1; // il valore vero è >= punteggio (fail-high)
+    public static final int SUPERIORE = 2; // il valore vero è <= punteggio (fail-low)
+
+    // Long per slot e per bucket
+    private static final int SLOT = 3;
+    private static final int BUCKET = 2 * SLOT;
+
+    // Bit delle informazioni sempre acceso negli slot occupati
+    private static final long OCCUPATO = 1L << 50;
+
+    private final long[] T;
+    private final int maschera;
+    // Età della ricerca corrente, gli slot di ricerche precedenti si possono sostituire
+    private int eta;
+
+    // Risultato dell'ultima chiamata a cerca, proprio di ogni vista
+    private long punteggio;
+    private int profondita;
+    private int limite;
+    private int mossa;
+
+    /**
+     * Crea una tabella che occupa al più il numero di megabyte indicato
+     * (il numero di bucket è arrotondato alla potenza di due inferiore).
+     *
+     * @param megabyte memoria massima della tabella, almeno 1
+     */
+    public TabellaTrasposizione(int megabyte) {
+        long bucket = Long.highestOneBit(Math.max(megabyte, 1) * (1L << 20) / (BUCKET * 8));
+        // Un array Java non può superare Integer.MAX_VALUE elementi
+        bucket = Math.min(bucket, Integer.highestOneBit(Integer.MAX_VALUE / BUCKET));
+        this.T = new long[(int) bucket * BUCKET];
+        this.maschera = (int) bucket - 1;
+    }
+
+    // Crea una vista della tabella t, con lo stesso array e la stessa età
+    private TabellaTrasposizione(TabellaTrasposizione t) {
+        this.T = t.T;
+        this.maschera = t.maschera;
+        this.eta = t.eta;
+    }
+
+    /**
+     * Restituisce una vista della tabella per un altro thread: condivide le posizioni
+     * salvate e l'età corrente, ma ha un proprio risultato di cerca.
+     *
+     * @return vista della tabella
+     */
+    public TabellaTrasposizione vista() {
+        return new TabellaTrasposizione(this);
+    }
+
+    /**
+     * Svuota la tabella.
+     */
+    public void svuota() {
+        Arrays.fill(T, 0L);
+        eta = 0;
+    }
+
+    /**
+     * Segnala l'inizio di una nuova ricerca: gli slot delle ricerche precedenti
+     * possono essere sostituiti anche se più profondi.
+     */
+    public void nuovaRicerca() {
+        eta = (eta + 1) & 0xFFFF;
+    }
+
+    /**
+     * Cerca la posizione con la chiave indicata. Se la trova, il suo punteggio
+     * (riportato alla distanza dalla radice ply), la profondità, il tipo di limite
+     * e la mossa migliore sono restituiti da punteggio(), profondita(), limite() e mossa().
+     *
+     * @param chiave chiave Zobrist della posizione
+     * @param ply    distanza della posizione dalla radice
+     *
+     * @return true se la posizione è nella tabella
+     */
+    public boolean cerca(long chiave, int ply) {
+        int b = ((int) chiave & maschera) * BUCKET;
+        for (int s = b; s < b + BUCKET; s += SLOT) {
+            long p = T[s + 1], info = T[s + 2];
+            if ((T[s] ^ p ^ info) == chiave && (info & OCCUPATO) != 0L) {
+                punteggio = daTabella(p, ply);
+                mossa = (int) (info & 0xFFFF) - 1;
+                limite = (int) (info >>> 16) & 0x3;
+                profondita = (int) (info >>> 18) & 0xFFFF;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Salva una posizione nella tabella.
+     *
+     * @param chiave     chiave Zobrist della posizione
+     * @param ply        distanza della posizione dalla radice
+     * @param profondita profondità residua della ricerca che ha calcolato il punteggio
+     * @param limite     ESATTO, INFERIORE o SUPERIORE
+     * @param punteggio  punteggio della posizione
+     * @param mossa      mossa migliore, -1 se non c'è
+     */
+    public void salva(long chiave, int ply, int profondita, int limite, long punteggio, int mossa) {
+        int b = ((int) chiave & maschera) * BUCKET;
+        // Slot a sostituzione per profondità: lo uso se contiene la stessa posizione,
+        // se è di una ricerca precedente o se la nuova ricerca è almeno altrettanto profonda
+        int s = b;
+        long info = T[s + 2];
+        if ((T[s] ^ T[s + 1] ^ info) != chiave && (info & OCCUPATO) != 0L
+                && ((int) (info >>> 34) & 0xFFFF) == eta && profondita < ((int) (info >>> 18) & 0xFFFF))
+            s = b + SLOT; // altrimenti uso lo slot a sostituzione sempre
+
+        long p = inTabella(punteggio, ply);
+        info = OCCUPATO | (long) eta << 34 | (long) (profondita & 0xFFFF) << 18 | (long) limite << 16 | (mossa + 1);
+        T[s + 1] = p;
+        T[s + 2] = info;
+        T[s] = chiave ^ p ^ info;
+    }
+
+    // Le vittorie e le sconfitte vengono salvate come distanza dalla posizione invece che dalla radice
+    private static long inTabella(long punteggio, int ply) {
+        if (punteggio > Ronaldo.SOGLIA_VITTORIA) return punteggio + ply;
+        if (punteggio < -Ronaldo.SOGLIA_VITTORIA) return punteggio - ply;
+        return punteggio;
+    }
+
+    private static long daTabella(long punteggio, int ply) {
+        if (punteggio > Ronaldo.SOGLIA_VITTORIA) return punteggio - ply;
+        if (punteggio < -Ronaldo.SOGLIA_VITTORIA) return punteggio + ply;
+        return punteggio;
+    }
+
+    public long punteggio() {
+        return punteggio;
+    }
+
+    public int profondita() {
+        return profondita;
+    }
+
+    public int limite() {
+        return limite;
+    }
+
+    public int mossa() {
+        return mossa;
+    }
+}
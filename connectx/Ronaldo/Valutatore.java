@@ -0,0 +1,63 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+
+/**
+ * Valutazione euristica incrementale della tavola su cui Ronaldo sta cercando, dal punto
+ * di vista di Ronaldo.
+ * <p>
+ * Il valutatore si collega a una tavola e ne tiene la valutazione aggiornata mentre la
+ * ricerca fa e disfa le mosse con gioca e annulla al posto di markColumn e unmarkColumn.
+ * Tutte le implementazioni devono dare gli stessi punteggi: cambia solo il modo di contare
+ * i pezzi delle sottosequenze. ValutatoreScalare è l'implementazione di riferimento;
+ * quella da usare si sceglie con la proprietà di sistema ronaldo.valutatore (vedi crea).
+ * </p>
+ */
+public interface Valutatore {
+
+    // Implementazione che usa la Vector API, compilata a parte perché richiede il modulo jdk.incubator.vector
+    String VETTORIALE = "connectx.Ronaldo.vettoriale.ValutatoreVettoriale";
+
+    /**
+     * Crea il valutatore indicato dalla proprietà di sistema ronaldo.valutatore: scalare
+     * (predefinito) o vettoriale. Se il valutatore vettoriale non è disponibile usa quello scalare.
+     *
+     * @param mio pezzo di Ronaldo codificato come in CXBoard.cell
+     */
+    static Valutatore crea(int M, int N, int K, byte mio) {
+        if ("vettoriale".equalsIgnoreCase(System.getProperty("ronaldo.valutatore", "scalare"))) {
+            try {
+                return (Valutatore) Class.forName(VETTORIALE)
+                        .getConstructor(int.class, int.class, int.class, byte.class)
+                        .newInstance(M, N, K, mio);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                System.out.println("Valutatore vettoriale non disponibile, uso quello scalare: " + e);
+            }
+        }
+        return new ValutatoreScalare(M, N, K, mio);
+    }
+
+    // Collega la tavola B e ne calcola la valutazione da zero
+    void collega(CXBoard B);
+
+    // Collega la tavola B, di cui la valutazione è già nota
+    void collega(CXBoard B, long punteggio);
+
+    // Valutazione della posizione corrente della tavola collegata
+    long punteggio();
+
+    // Valutazione della tavola collegata dopo la mossa col del giocatore che muove, senza giocarla
+    long punteggioDopo(int col);
+
+    // Vero se la mossa dell'ultima chiamata a punteggioDopo vince
+    boolean vincente();
+
+    // Gioca la mossa col sulla tavola collegata, aggiornando la valutazione
+    void gioca(int col);
+
+    // Annulla l'ultima mossa della tavola collegata, la valutazione torna quella precedente
+    void annulla();
+
+    // Valutazione di B da zero, leggendo ogni riga, colonna e diagonale una volta
+    long valutaTutto(CXBoard B);
+}
@@ -0,0 +1,214 @@
+package connectx.Ronaldo;
+
+import connectx.CXBoard;
+import connectx.CXCellState;
+
+/**
+ * Valutatore di riferimento di Ronaldo, che conta i pezzi delle sottosequenze una cella alla volta.
+ * <p>
+ * La valutazione è la somma, su tutte le sottosequenze di K celle in riga, in colonna e
+ * in diagonale, del punteggio di punteggioFinestra dal punto di vista di Ronaldo. Durante
+ * la ricerca le mosse si fanno con gioca e annulla al posto di markColumn e unmarkColumn:
+ * gioca rivaluta solo le sottosequenze che contengono la nuova cella, in una sola lettura
+ * di ogni direzione, e salva la nuova valutazione su una pila indicizzata dal numero di
+ * pezzi sulla tavola; annulla torna alla valutazione precedente in O(1).
+ * </p>
+ * <p>
+ * Le sottoclassi possono cambiare il modo in cui si contano i pezzi ridefinendo
+ * sommaLinea e variazioneSegmento.
+ * </p>
+ */
+public class ValutatoreScalare implements Valutatore {
+
+    protected static final byte LIBERA = (byte) CXCellState.FREE.ordinal();
+
+    // Direzioni delle sottosequenze: verticale, orizzontale, diagonale discendente e ascendente
+    private static final int[] DI = {1, 0, 1, -1};
+    private static final int[] DJ = {0, 1, 1, 1};
+
+    protected final int M, N, K;
+    // Pezzo di Ronaldo codificato come in CXBoard.cell
+    protected final byte mio;
+    // Celle attorno a una mossa (al più 2K-1) e di una linea intera della tavola, più il margine
+    private final byte[] segmento;
+    private final byte[] linea;
+    // Valutazione della tavola per numero di pezzi, fino a quello della posizione corrente
+    private final long[] pila;
+    // Punteggi delle sottosequenze: finestra[miei * (K+1) + suoi] vale punteggioFinestra(miei, suoi)
+    protected final int[] finestra;
+
+    // Tavola collegata
+    private CXBoard B;
+    // Vero se l'ultima mossa valutata con punteggioDopo allinea K pezzi
+    protected boolean vincente;
+
+    public ValutatoreScalare(int M, int N, int K, byte mio) {
+        this(M, N, K, mio, 0);
+    }
+
+    /*
+     * Costruttore delle sottoclassi: i buffer delle celle hanno margine byte in più dopo la
+     * fine della linea, per chi legge le celle a blocchi oltre l'ultima sottosequenza.
+     */
+    protected ValutatoreScalare(int M, int N, int K, byte mio, int margine) {
+        this.M = M;
+        this.N = N;
+        this.K = K;
+        this.mio = mio;
+        this.segmento = new byte[Math.min(2 * K - 1, Math.max(M, N)) + margine];
+        this.linea = new byte[Math.max(M, N) + margine];
+        this.pila = new long[M * N + 2];
+        this.finestra = new int[(K + 1) * (K + 1)];
+        for (int miei = 0; miei <= K; miei++)
+            for (int suoi = 0; suoi <= K; suoi++)
+                finestra[miei * (K + 1) + suoi] = punteggioFinestra(miei, suoi);
+    }
+
+    /*
+     * Punteggio di una sottosequenza con miei pezzi di Ronaldo e suoi dell'avversario: la differenza,
+     * moltiplicata per 2 elevato ai pezzi presenti se la sottosequenza è di un solo giocatore.
+     * Esempio: in una sottosequenza di 4 l'avversario ha 3 pezzi, quindi va ASSOLUTAMENTE bloccata.
+     * Serve solo a riempire la tabella finestra, la valutazione legge la tabella.
+     */
+    static int punteggioFinestra(int miei, int suoi) {
+        int score = miei - suoi;
+        if (suoi == 0)
+            score *= (int) Math.pow(2, miei);
+        if (miei == 0)
+            score *= (int) Math.pow(2, suoi);
+        return score;
+    }
+
+    @Override
+    public void collega(CXBoard B) {
+        collega(B, valutaTutto(B));
+    }
+
+    @Override
+    public void collega(CXBoard B, long punteggio) {
+        this.B = B;
+        pila[B.numOfMarkedCells()] = punteggio;
+    }
+
+    @Override
+    public long punteggio() {
+        return pila[B.numOfMarkedCells()];
+    }
+
+    @Override
+    public long punteggioDopo(int col) {
+        return punteggio() + variazione(col);
+    }
+
+    @Override
+    public boolean vincente() {
+        return vincente;
+    }
+
+    @Override
+    public void gioca(int col) {
+        long v = punteggioDopo(col);
+        B.markColumn(col);
+        pila[B.numOfMarkedCells()] = v;
+    }
+
+    @Override
+    public void annulla() {
+        B.unmarkColumn();
+    }
+
+    /*
+     * Variazione della valutazione se il giocatore che muove gioca in col: per ogni direzione
+     * legge una volta il segmento di al più 2K-1 celle attorno alla nuova cella e confronta il
+     * punteggio di ogni sottosequenza che la contiene prima e dopo la mossa.
+     */
+    private long variazione(int col) {
+        int row = B.freeRow(col);
+        boolean ronaldo = B.currentPlayer() == mio;
+        long delta = 0L;
+        vincente = false;
+
+        for (int d = 0; d < 4; d++) {
+            int di = DI[d], dj = DJ[d];
+            //Celle che precedono la mossa nella direzione (al più K-1) senza uscire dalla tavola
+            int p = Math.min(K - 1, Math.min(passi(row, di, M), passi(col, dj, N)));
+            int len = B.readLine(row - p * di, col - p * dj, di, dj, segmento);
+            if (len >= K)
+                delta += variazioneSegmento(segmento, len, p, ronaldo);
+        }
+        return delta;
+    }
+
+    /*
+     * Variazione delle sottosequenze del segmento che contengono la cella vuota in posizione p,
+     * se ci gioca Ronaldo (ronaldo vero) o l'avversario; len è almeno K. Mette vincente a vero
+     * se una di loro ha già K-1 pezzi di chi gioca.
+     */
+    protected long variazioneSegmento(byte[] segmento, int len, int p, boolean ronaldo) {
+        //La mossa aggiunge un pezzo a miei o a suoi, cioè sposta l'indice della tabella di passo
+        int passo = ronaldo ? K + 1 : 1;
+        long delta = 0L;
+
+        //Pezzi della prima sottosequenza, le successive scorrono di una cella
+        int miei = 0, suoi = 0;
+        for (int c = 0; c < K; c++) {
+            if (segmento[c] == mio) miei++;
+            else if (segmento[c] != LIBERA) suoi++;
+        }
+        for (int s = 0; ; s++) {
+            int indice = miei * (K + 1) + suoi;
+            delta += finestra[indice + passo] - finestra[indice];
+            if ((ronaldo ? miei : suoi) == K - 1) vincente = true;
+
+            if (s == p || s + K == len) break;
+            if (segmento[s] == mio) miei--;
+            else if (segmento[s] != LIBERA) suoi--;
+            if (segmento[s + K] == mio) miei++;
+            else if (segmento[s + K] != LIBERA) suoi++;
+        }
+        return delta;
+    }
+
+    //Numero di passi all'indietro in direzione d che si possono fare da x senza uscire da [0, size)
+    private int passi(int x, int d, int size) {
+        return d > 0 ? x : d < 0 ? size - 1 - x : K - 1;
+    }
+
+    @Override
+    public long valutaTutto(CXBoard B) {
+        long score = 0L;
+        for (int i = 0; i < M; i++) {
+            score += valutaLinea(B, i, 0, 0, 1);  //Righe
+            score += valutaLinea(B, i, 0, 1, 1);  //Diagonali discendenti che partono dalla prima colonna
+            score += valutaLinea(B, i, 0, -1, 1); //Diagonali ascendenti che partono dalla prima colonna
+        }
+        for (int j = 0; j < N; j++) {
+            score += valutaLinea(B, 0, j, 1, 0);  //Colonne
+            if (j > 0) {
+                score += valutaLinea(B, 0, j, 1, 1);      //Diagonali discendenti che partono dalla prima riga
+                score += valutaLinea(B, M - 1, j, -1, 1); //Diagonali ascendenti che partono dall'ultima riga
+            }
+        }
+        return score;
+    }
+
+    // Somma dei punteggi delle sottosequenze della linea che parte da (i,j) in direzione di,dj
+    private long valutaLinea(CXBoard B, int i, int j, int di, int dj) {
+        int len = B.readLine(i, j, di, dj, linea);
+        return len < K ? 0L : sommaLinea(linea, len);
+    }
+
+    // Somma dei punteggi delle sottosequenze delle prime len celle della linea, con len almeno K
+    protected long sommaLinea(byte[] linea, int len) {
+        long score = 0L;
+        for (int s = 0; s + K <= len; s++) {
+            int miei = 0, suoi = 0;
+            for (int c = s; c < s + K; c++) {
+                if (linea[c] == mio) miei++;
+                else if (linea[c] != LIBERA) suoi++;
+            }
+            score += finestra[miei * (K + 1) + suoi];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,144 @@
+package connectx.Ronaldo.vettoriale;
+
+import connectx.CXBoard;
+import connectx.CXGameState;
+import connectx.Ronaldo.Valutatore;
+import connectx.Ronaldo.ValutatoreScalare;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Random;
+
+/**
+ * Valutatore di Ronaldo che conta i pezzi di molte sottosequenze insieme con la Vector API.
+ * <p>
+ * Le celle di una linea sono byte consecutivi. Ogni corsia del vettore è una sottosequenza:
+ * sommando i confronti dei K vettori letti da s, s+1, ..., s+K-1 si ottengono in una volta i
+ * pezzi di Ronaldo e dell'avversario delle sottosequenze che partono da s in poi. I punteggi
+ * vengono poi dalla stessa tabella del valutatore scalare, quindi sono identici.
+ * </p>
+ * <p>
+ * Richiede il modulo jdk.incubator.vector sia per compilare sia per eseguire:
+ * javac --add-modules jdk.incubator.vector -cp ".." Ronaldo/vettoriale/*.java
+ * e si usa con java --add-modules jdk.incubator.vector -Dronaldo.valutatore=vettoriale.
+ * Il main confronta i due valutatori su posizioni casuali.
+ * </p>
+ */
+public class ValutatoreVettoriale extends ValutatoreScalare {
+
+    private static final VectorSpecies<Byte> SPECIE = ByteVector.SPECIES_PREFERRED;
+    private static final ByteVector UNO = ByteVector.broadcast(SPECIE, (byte) 1);
+
+    // Pezzo dell'avversario codificato come in CXBoard.cell
+    private final byte suo;
+    // Pezzi di Ronaldo e dell'avversario delle sottosequenze di un blocco di corsie
+    private final byte[] contaMiei = new byte[SPECIE.length()];
+    private final byte[] contaSuoi = new byte[SPECIE.length()];
+    // Con più di 127 pezzi da allineare i conteggi non stanno in un byte, si usa il valutatore scalare
+    private final boolean scalare;
+
+    public ValutatoreVettoriale(int M, int N, int K, byte mio) {
+        //Le letture a blocchi possono andare oltre la linea di al più una lunghezza del vettore
+        super(M, N, K, mio, SPECIE.length());
+        this.suo = (byte) (1 - mio);
+        this.scalare = K > Byte.MAX_VALUE;
+    }
+
+    //Conta i pezzi delle sottosequenze delle celle che partono da s, s+1, ... in contaMiei e contaSuoi
+    private void conta(byte[] celle, int s) {
+        ByteVector miei = ByteVector.zero(SPECIE);
+        ByteVector suoi = ByteVector.zero(SPECIE);
+        for (int c = 0; c < K; c++) {
+            ByteVector v = ByteVector.fromArray(SPECIE, celle, s + c);
+            VectorMask<Byte> mia = v.compare(VectorOperators.EQ, mio);
+            VectorMask<Byte> sua = v.compare(VectorOperators.EQ, suo);
+            miei = miei.add(UNO, mia);
+            suoi = suoi.add(UNO, sua);
+        }
+        miei.intoArray(contaMiei, 0);
+        suoi.intoArray(contaSuoi, 0);
+    }
+
+    @Override
+    protected long sommaLinea(byte[] linea, int len) {
+        if (scalare) return super.sommaLinea(linea, len);
+        int finestre = len - K + 1;
+        long score = 0L;
+        for (int s = 0; s < finestre; s += SPECIE.length()) {
+            conta(linea, s);
+            //Le corsie oltre l'ultima sottosequenza leggono celle non valide e vengono scartate
+            int corsie = Math.min(SPECIE.length(), finestre - s);
+            for (int l = 0; l < corsie; l++)
+                score += finestra[contaMiei[l] * (K + 1) + contaSuoi[l]];
+        }
+        return score;
+    }
+
+    @Override
+    protected long variazioneSegmento(byte[] segmento, int len, int p, boolean ronaldo) {
+        if (scalare) return super.variazioneSegmento(segmento, len, p, ronaldo);
+        int passo = ronaldo ? K + 1 : 1;
+        //Solo le sottosequenze che partono entro p contengono la nuova cella
+        int finestre = Math.min(p, len - K) + 1;
+        long delta = 0L;
+        for (int s = 0; s < finestre; s += SPECIE.length()) {
+            conta(segmento, s);
+            int corsie = Math.min(SPECIE.length(), finestre - s);
+            for (int l = 0; l < corsie; l++) {
+                int indice = contaMiei[l] * (K + 1) + contaSuoi[l];
+                delta += finestra[indice + passo] - finestra[indice];
+                if ((ronaldo ? contaMiei[l] : contaSuoi[l]) == K - 1) vincente = true;
+            }
+        }
+        return delta;
+    }
+
+    /*
+     * Confronta il valutatore vettoriale con quello scalare su partite casuali: a ogni mossa
+     * la valutazione da zero e, per ogni colonna disponibile, il punteggio dopo la mossa e
+     * se la mossa vince. Esce con stato 1 alla prima differenza.
+     */
+    public static void main(String[] args) {
+        int[][] tavole = {{6, 7, 4}, {5, 5, 4}, {8, 12, 5}, {10, 4, 3}, {20, 20, 10}, {3, 40, 3}};
+        int partite = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Random random = new Random(args.length > 1 ? Long.parseLong(args[1]) : 0L);
+        long posizioni = 0;
+        for (int[] t : tavole) {
+            int M = t[0], N = t[1], K = t[2];
+            for (int g = 0; g < partite; g++) {
+                byte mio = (byte) (g & 1);
+                Valutatore scalare = new ValutatoreScalare(M, N, K, mio);
+                Valutatore vettoriale = new ValutatoreVettoriale(M, N, K, mio);
+                CXBoard A = new CXBoard(M, N, K), B = new CXBoard(M, N, K);
+                scalare.collega(A);
+                vettoriale.collega(B);
+                while (A.gameState() == CXGameState.OPEN) {
+                    posizioni++;
+                    if (scalare.punteggio() != vettoriale.punteggio()
+                            || scalare.valutaTutto(A) != vettoriale.valutaTutto(B))
+                        differenza(M, N, K, A, "valutazione");
+                    for (int col : A.getAvailableColumns()) {
+                        if (scalare.punteggioDopo(col) != vettoriale.punteggioDopo(col)
+                                || scalare.vincente() != vettoriale.vincente())
+                            differenza(M, N, K, A, "mossa " + col);
+                    }
+                    Integer[] colonne = A.getAvailableColumns();
+                    int col = colonne[random.nextInt(colonne.length)];
+                    scalare.gioca(col);
+                    vettoriale.gioca(col);
+                }
+            }
+        }
+        System.out.println("Valutatori identici su " + posizioni + " posizioni ("
+                + SPECIE.length() + " corsie da un byte)");
+    }
+
+    private static void differenza(int M, int N, int K, CXBoard B, String cosa) {
+        StringBuilder mosse = new StringBuilder();
+        for (var c : B.getMarkedCells()) mosse.append(' ').append(c.j);
+        System.out.println("Differenza (" + cosa + ") su " + M + "x" + N + "x" + K + ", colonne giocate:" + mosse);
+        System.exit(1);
+    }
+}